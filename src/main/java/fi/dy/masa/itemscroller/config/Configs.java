@@ -1,7 +1,9 @@
 package fi.dy.masa.itemscroller.config;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonArray;
@@ -15,11 +17,15 @@ import fi.dy.masa.malilib.config.IConfigHandler;
 import fi.dy.masa.malilib.config.IConfigValue;
 import fi.dy.masa.malilib.config.options.ConfigBoolean;
 import fi.dy.masa.malilib.config.options.ConfigInteger;
+import fi.dy.masa.malilib.config.options.ConfigOptionList;
+import fi.dy.masa.malilib.config.options.ConfigString;
 import fi.dy.masa.malilib.util.FileUtils;
 import fi.dy.masa.malilib.util.JsonUtils;
 import fi.dy.masa.itemscroller.Reference;
 import fi.dy.masa.itemscroller.recipes.CraftingHandler;
 import fi.dy.masa.itemscroller.recipes.CraftingHandler.SlotRange;
+import fi.dy.masa.itemscroller.util.ClickCostModel;
+import fi.dy.masa.itemscroller.util.CraftOutputSinkType;
 
 public class Configs implements IConfigHandler
 {
@@ -28,13 +34,26 @@ public class Configs implements IConfigHandler
     public static class Generic
     {
         public static final ConfigBoolean CARPET_CTRL_Q_CRAFTING                = new ConfigBoolean("carpetCtrlQCraftingEnabledOnServer",   false, "Set to true if the server is running the Carpet mod,\nand has the ctrlQCrafting option enabled.\nThis just changes which method Item Scroller uses\nfor the Drop key + Shift + Right click crafting.");
+        public static final ConfigBoolean CLICK_COST_LOGGING                    = new ConfigBoolean("clickCostLogging",                     false, "Log the estimated costs of the candidate click strategies\nand the selected strategy, when filling crafting grids");
+        public static final ConfigInteger CLICK_COST_PACKET                     = new ConfigInteger("clickCostPacket",                      10, 0, 1000, "The cost model weight of one slot click packet.\nPer-server weights can be set in the\n'clickCostServerWeights' object in the config file.");
+        public static final ConfigInteger CLICK_COST_QUICK_CRAFT                = new ConfigInteger("clickCostQuickCraft",                  2, 0, 1000, "The extra cost model weight of one drag-split\n(QUICK_CRAFT) slot click packet, for the server-side\nhandling of the drag on top of the plain packet cost");
+        public static final ConfigInteger CLICK_COST_SWAP                       = new ConfigInteger("clickCostSwap",                        1, 0, 1000, "The extra cost model weight of one hotbar\nswap (SWAP) slot click packet");
         public static final ConfigBoolean CLIENT_CRAFTING_FIX                   = new ConfigBoolean("clientCraftingFixOn1.12",              true, "Enable updating the crafting recipe output directly on the client side.\nThis fixes the quick/mass crafting and right-click-to-craft-a-stack\nfeatures othrwise being broken in 1.12.");
+        public static final ConfigInteger CRAFTER_LOAD_CRAFT_COUNT              = new ConfigInteger("crafterLoadCraftCount",                64, 1, 64, "How many crafts' worth of items the 'crafterLoadRecipe' hotkey\nloads into each used Crafter cell. Capped to the\nmax stack size of each ingredient.");
+        public static final ConfigInteger CRAFTING_QUEUE_ADD_COUNT              = new ConfigInteger("craftingQueueAddCount",                64, 1, 1000000, "How many result items the 'craftingQueueAdd' and\n'craftingQueueAddChain' hotkeys add to the crafting job queue\nfor the currently selected recipe");
+        public static final ConfigBoolean CRAFTING_RENDER_CRAFTABLE_COUNT       = new ConfigBoolean("craftingRenderCraftableCount",         true, "If enabled, then the number of times each recipe can be\ncrafted with the items currently in the inventory\nis shown in the crafting recipe view.");
         public static final ConfigBoolean CRAFTING_RENDER_RECIPE_ITEMS          = new ConfigBoolean("craftingRenderRecipeItems",            true, "If enabled, then the recipe items are also rendered\nin the crafting recipe view.");
+        public static final ConfigBoolean CRAFTING_TAG_AWARE_INGREDIENTS        = new ConfigBoolean("craftingTagAwareIngredients",          false, "If enabled, then the grid cells of stored recipes whose\nserver recipe ingredient accepts several items (like any planks)\ncan also be filled with any of those items, when the exact\nstored item runs out. Items with custom components\n(names, enchantments etc.) are never used as substitutes.");
         //public static final ConfigBoolean DEBUG_MESSAGES                        = new ConfigBoolean("debugMessages",                        false, "Enables some debug messages in the game console");
         public static final ConfigBoolean MOD_MAIN_TOGGLE                       = new ConfigBoolean("modMainToggle",                        true, "Can disable all the functionality of the entire mod");
         public static final ConfigBoolean MASS_CRAFT_INHIBIT_MID_UPDATES        = new ConfigBoolean("massCraftInhibitMidUpdates",           true, "Prevent recipe output slot updates in the middle of moving items\nto the crafting grid. This should reduce CPU usage\nbecause of not constantly querying the recipe after every grid change.");
         public static final ConfigInteger MASS_CRAFT_INTERVAL                   = new ConfigInteger("massCraftInterval",                    2, 1, 60, "The interval in game ticks the massCraft operation is repeated at");
+        public static final ConfigOptionList MASS_CRAFT_OUTPUT_SINK             = new ConfigOptionList("massCraftOutputSink",                CraftOutputSinkType.DROP, "Where the mass craft puts the crafted items:\n- Drop: throw them on the ground (see 'carpetCtrlQCraftingEnabledOnServer')\n- Container: move them to the other inventory of the open screen,\n  or to the main player inventory if the screen has none\n- Region: move them to the player inventory slots set in 'massCraftOutputRegion'\nIf the target is the whole main inventory, the output is just\nshift-clicked out, which may also fill the hotbar.\nThe mass craft stops when a Container or Region sink is full.");
+        public static final ConfigString  MASS_CRAFT_OUTPUT_REGION              = new ConfigString("massCraftOutputRegion",                 "9-35", "The player inventory slot index range used by the\n'massCraftOutputSink' Region option, as \"first-last\".\n0-8 is the hotbar and 9-35 is the main inventory.");
+        public static final ConfigBoolean MASS_CRAFT_PIPELINED                  = new ConfigBoolean("massCraftPipelined",                   false, "Use a pipelined mass craft loop, which only clears the\ncursor and the grid once, and then queues each refill\nright behind the previous extraction, planned from the\npredicted post-extraction state. With 'rateLimitClickPackets'\nenabled the click buffer is kept topped up across ticks,\nso the craft rate approaches the 'packetRateLimit'.\nNote: Not used with 'massCraftSwapsOnly'.");
         public static final ConfigInteger MASS_CRAFT_ITERATIONS                 = new ConfigInteger("massCraftIterations",                  36, 1, 256, "How many massCraft iterations/attempts to do per execution.\nWith unstackable items or a full inventory and \"small recipe\"\nthis will need to be larger, as a shift + click craft to the inventory\nmight only craft 1 or 2 items per operation.");
+        public static final ConfigBoolean MASS_CRAFT_PREDICT_OUTPUT             = new ConfigBoolean("massCraftPredictOutput",               true, "When the mass craft and craft everything features fill the grid\nwith exactly the contents of the stored recipe, set the\nstored result directly to the output slot, instead of\nmatching the recipe again after every refill.\nThe prediction is verified once, and then periodically\nsampled, see 'massCraftPredictVerifyInterval'.");
+        public static final ConfigInteger MASS_CRAFT_PREDICT_VERIFY_INTERVAL    = new ConfigInteger("massCraftPredictVerifyInterval",       16, 1, 1024, "Every Nth predicted crafting output update does\na full recipe match instead, to catch any drift\nbetween the stored recipe and the actual recipe result");
         public static final ConfigBoolean MASS_CRAFT_SWAPS                      = new ConfigBoolean("massCraftSwapsOnly",                   false, "Uses a newer method of filling the crafting grid,\nusing only swap slot packets.\n\nNote: Due to only using slot swap packets,\nno partial crafts are possible! And also no\nstack splitting will happen, at all.");
         public static final ConfigInteger PACKET_RATE_LIMIT                     = new ConfigInteger("packetRateLimit",                      4, 1, 1024, "The limit of sent emulated slot click packets per game tick,\nif 'rateLimitClickPackets' is enabled");
         public static final ConfigBoolean SCROLL_CRAFT_STORE_RECIPES_TO_FILE    = new ConfigBoolean("craftingRecipesSaveToFile",            true, "If enabled, then the crafting features recipes are saved to a file\ninside minecraft/itemscroller/recipes_worldorservername.nbt.\nThis makes the recipes persistent across game restarts.");
@@ -44,17 +63,32 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean REVERSE_SCROLL_DIRECTION_STACKS       = new ConfigBoolean("reverseScrollDirectionStacks",         false, "Reverse the scrolling direction for full stacks mode.");
         public static final ConfigBoolean USE_RECIPE_CACHING                    = new ConfigBoolean("useRecipeCaching",                     true, "Enables caching the last used recipe in the crafting\nrecipe output item fetching code. This can help a lot\nwith lowering CPU usage when mass crafting stuff.");
         public static final ConfigBoolean SLOT_POSITION_AWARE_SCROLL_DIRECTION  = new ConfigBoolean("useSlotPositionAwareScrollDirection",  false, "When enabled, the item movement direction depends\non the slots' y-position on screen. Might be derpy with more\ncomplex inventories, use with caution!");
+        public static final ConfigInteger VILLAGER_DATA_UNLOAD_TIME             = new ConfigInteger("villagerDataUnloadTime",               300, 0, 86400, "The time in seconds after which the villager data shards\n(the villagers grouped by their UUID) that haven't been\naccessed are saved and unloaded from memory.\n0 = never unload, until leaving the world/server.");
+        public static final ConfigBoolean VILLAGER_TRADE_METRICS_OVERLAY        = new ConfigBoolean("villagerTradeMetricsOverlay",          false, "Show the trade throughput metrics of the current villager\nand of the whole session on the villager trading screen");
         public static final ConfigBoolean VILLAGER_TRADE_USE_GLOBAL_FAVORITES   = new ConfigBoolean("villagerTradeUseGlobalFavorites",      true, "Whether or not global (per-item-type) villager trade\nfavorites should be used.");
         public static final ConfigBoolean VILLAGER_TRADE_LIST_REMEMBER_SCROLL   = new ConfigBoolean("villagerTradeListRememberScrollPosition", true, "Remember and restore the last scroll position in the\ntrade list when re-opening the GUI");
 
         public static final ImmutableList<IConfigValue> OPTIONS = ImmutableList.of(
                 CARPET_CTRL_Q_CRAFTING,
+                CLICK_COST_LOGGING,
+                CLICK_COST_PACKET,
+                CLICK_COST_QUICK_CRAFT,
+                CLICK_COST_SWAP,
                 CLIENT_CRAFTING_FIX,
+                CRAFTER_LOAD_CRAFT_COUNT,
+                CRAFTING_QUEUE_ADD_COUNT,
+                CRAFTING_RENDER_CRAFTABLE_COUNT,
                 CRAFTING_RENDER_RECIPE_ITEMS,
+                CRAFTING_TAG_AWARE_INGREDIENTS,
                 //DEBUG_MESSAGES,
                 MASS_CRAFT_INHIBIT_MID_UPDATES,
                 MASS_CRAFT_INTERVAL,
                 MASS_CRAFT_ITERATIONS,
+                MASS_CRAFT_OUTPUT_REGION,
+                MASS_CRAFT_OUTPUT_SINK,
+                MASS_CRAFT_PIPELINED,
+                MASS_CRAFT_PREDICT_OUTPUT,
+                MASS_CRAFT_PREDICT_VERIFY_INTERVAL,
                 MASS_CRAFT_SWAPS,
                 MOD_MAIN_TOGGLE,
                 PACKET_RATE_LIMIT,
@@ -65,6 +99,8 @@ public class Configs implements IConfigHandler
                 REVERSE_SCROLL_DIRECTION_STACKS,
                 SLOT_POSITION_AWARE_SCROLL_DIRECTION,
                 USE_RECIPE_CACHING,
+                VILLAGER_DATA_UNLOAD_TIME,
+                VILLAGER_TRADE_METRICS_OVERLAY,
                 VILLAGER_TRADE_USE_GLOBAL_FAVORITES,
                 VILLAGER_TRADE_LIST_REMEMBER_SCROLL
         );
@@ -103,6 +139,7 @@ public class Configs implements IConfigHandler
 
     public static final Set<String> GUI_BLACKLIST = new HashSet<>();
     public static final Set<String> SLOT_BLACKLIST = new HashSet<>();
+    public static final Map<String, ClickCostModel.Weights> CLICK_COST_SERVER_WEIGHTS = new HashMap<>();
 
     public static void loadFromFile()
     {
@@ -122,6 +159,7 @@ public class Configs implements IConfigHandler
 
                 getStrings(root, GUI_BLACKLIST, "guiBlacklist");
                 getStrings(root, SLOT_BLACKLIST, "slotBlacklist");
+                getClickCostWeights(root, "clickCostServerWeights");
             }
         }
 
@@ -147,6 +185,7 @@ public class Configs implements IConfigHandler
 
             writeStrings(root, GUI_BLACKLIST, "guiBlacklist");
             writeStrings(root, SLOT_BLACKLIST, "slotBlacklist");
+            writeClickCostWeights(root, "clickCostServerWeights");
 
             JsonUtils.writeJsonToFile(root, new File(dir, CONFIG_FILE_NAME));
         }
@@ -194,4 +233,35 @@ public class Configs implements IConfigHandler
             obj.add(arrayName, arr);
         }
     }
+
+    private static void getClickCostWeights(JsonObject obj, String objName)
+    {
+        CLICK_COST_SERVER_WEIGHTS.clear();
+
+        if (JsonUtils.hasObject(obj, objName))
+        {
+            for (Map.Entry<String, JsonElement> entry : obj.getAsJsonObject(objName).entrySet())
+            {
+                if (entry.getValue().isJsonObject())
+                {
+                    CLICK_COST_SERVER_WEIGHTS.put(entry.getKey(), ClickCostModel.Weights.fromJson(entry.getValue().getAsJsonObject()));
+                }
+            }
+        }
+    }
+
+    private static void writeClickCostWeights(JsonObject obj, String objName)
+    {
+        if (CLICK_COST_SERVER_WEIGHTS.isEmpty() == false)
+        {
+            JsonObject weightsObj = new JsonObject();
+
+            for (Map.Entry<String, ClickCostModel.Weights> entry : CLICK_COST_SERVER_WEIGHTS.entrySet())
+            {
+                weightsObj.add(entry.getKey(), entry.getValue().toJson());
+            }
+
+            obj.add(objName, weightsObj);
+        }
+    }
 }
@@ -13,13 +13,21 @@ public class Hotkeys
     private static final KeybindSettings GUI_NO_ORDER = KeybindSettings.create(KeybindSettings.Context.GUI, KeyAction.PRESS, false, false, false, true);
 
     public static final ConfigHotkey OPEN_CONFIG_GUI            = new ConfigHotkey("openConfigGui",         "I,C", "Open the in-game config GUI");
+    public static final ConfigHotkey OPEN_TRADE_CATALOG         = new ConfigHotkey("openTradeCatalog",      "", "Open the villager trade catalog search screen,\nwhich lists the last seen offers of all the villagers\nthat sell the searched item or enchantment");
 
+    public static final ConfigHotkey CRAFTER_LOAD_RECIPE        = new ConfigHotkey("crafterLoadRecipe",     "", KeybindSettings.GUI, "Load the currently selected recipe into the open Crafter's\ngrid, 'crafterLoadCraftCount' crafts' worth of items per cell.\nThe recipe is moved inside the grid to avoid disabled cells, if needed.");
+    public static final ConfigHotkey CRAFTING_QUEUE_ADD         = new ConfigHotkey("craftingQueueAdd",      "", KeybindSettings.GUI, "Add 'craftingQueueAddCount' items of the currently selected\nrecipe's output to the crafting job queue.\nThe queued jobs are crafted in order while\na crafting GUI is open.");
+    public static final ConfigHotkey CRAFTING_QUEUE_ADD_CHAIN   = new ConfigHotkey("craftingQueueAddChain", "", KeybindSettings.GUI, "Add 'craftingQueueAddCount' items of the currently selected\nrecipe's output to the crafting job queue, including the\nstages for any ingredients that are the result of\nsome other stored recipe and are missing\nfrom the inventory");
+    public static final ConfigHotkey CRAFTING_QUEUE_CLEAR       = new ConfigHotkey("craftingQueueClear",    "", KeybindSettings.GUI, "Clear the crafting job queue");
     public static final ConfigHotkey CRAFT_EVERYTHING           = new ConfigHotkey("craftEverything",       "LEFT_CONTROL,C", GUI_NO_ORDER, "Craft everything possible once with the currently selected recipe");
     public static final ConfigHotkey DROP_ALL_MATCHING          = new ConfigHotkey("dropAllMatching",       "LEFT_CONTROL,LEFT_SHIFT,Q", GUI_NO_ORDER, "Drop all stacks identical to the hovered stack");
+    public static final ConfigHotkey DUMP_TRADE_METRICS         = new ConfigHotkey("dumpTradeMetrics",      "", KeybindSettings.GUI, "Write the villager trade throughput metrics of this session\n(trades, packets, trade selections, failed attempts and time,\nin total and per villager) to a file in the\nminecraft/itemscroller/ directory");
+    public static final ConfigHotkey FURNACE_LOAD               = new ConfigHotkey("furnaceLoad",           "", KeybindSettings.GUI, "Load the open furnace, smoker or blast furnace:\ntake out the finished items, fill the input slot with\nthe hovered item (or the item already in the input slot),\nand add just enough fuel to smelt all of the input items");
     public static final ConfigHotkey MASS_CRAFT                 = new ConfigHotkey("massCraft",             "LEFT_CONTROL,LEFT_ALT,C", GUI_NO_ORDER, "Mass craft and throw out the results with the\ncurrently selected recipe as long as this\nkeybind is held down");
     public static final ConfigHotkey MOVE_CRAFT_RESULTS         = new ConfigHotkey("moveCraftResults",      "LEFT_CONTROL,M", GUI_NO_ORDER, "Move all of the currently selected recipe's\noutput items from the player inventory\nto the other inventory");
     public static final ConfigHotkey RECIPE_VIEW                = new ConfigHotkey("recipeView",            "A", GUI_RELAXED, "Show the Item Scroller recipe GUI");
     public static final ConfigHotkey SLOT_DEBUG                 = new ConfigHotkey("slotDebug",             "LEFT_CONTROL,LEFT_ALT,LEFT_SHIFT,I", GUI_NO_ORDER, "Print debug info for the hovered slot or GUI");
+    public static final ConfigHotkey STONECUTTER_CUT_ALL        = new ConfigHotkey("stonecutterCutAll",     "", KeybindSettings.GUI, "Cut all the items of the type in the Stonecutter's input slot\nfrom the inventory into the output that was last selected\nfor that input item");
     public static final ConfigHotkey STORE_RECIPE               = new ConfigHotkey("storeRecipe",           "BUTTON_3", GUI_RELAXED_CANCEL, "Store a recipe while hovering over a crafting output item");
     public static final ConfigHotkey THROW_CRAFT_RESULTS        = new ConfigHotkey("throwCraftResults",     "LEFT_CONTROL,T", GUI_NO_ORDER, "Throw all of the currently selected recipe's\noutput items to the ground from the player inventory");
     public static final ConfigHotkey TOGGLE_MOD_ON_OFF          = new ConfigHotkey("toggleModOnOff",        "", KeybindSettings.GUI, "Toggle all mod functionality ON/OFF");
@@ -48,18 +56,27 @@ public class Hotkeys
     public static final ConfigHotkey MODIFIER_MOVE_EVERYTHING   = new ConfigHotkey("modifierMoveEverything", "LEFT_ALT,LEFT_SHIFT", GUI_NO_ORDER, "Modifier key to move ALL items to the other\ninventory when scrolling over a stack");
     public static final ConfigHotkey MODIFIER_MOVE_MATCHING     = new ConfigHotkey("modifierMoveMatching",   "LEFT_ALT", GUI_NO_ORDER, "Modifier key to move all matching items to the other\ninventory when scrolling over a stack");
     public static final ConfigHotkey MODIFIER_MOVE_STACK        = new ConfigHotkey("modifierMoveStack",      "LEFT_SHIFT", GUI_NO_ORDER, "Modifier key to move the entire stack to the other\ninventory when scrolling over it");
+    public static final ConfigHotkey MODIFIER_VILLAGER_TRADE_PRIORITY = new ConfigHotkey("modifierVillagerTradePriority", "LEFT_CONTROL", GUI_RELAXED, "Modifier key to hold while scrolling over a trade,\nto raise or lower its trade priority.\nThe favorited trades with a higher priority get\nthe first share of the items when trading all favorites.");
     public static final ConfigHotkey MODIFIER_TOGGLE_VILLAGER_GLOBAL_FAVORITE = new ConfigHotkey("modifierToggleVillagerGlobalFavorite", "LEFT_SHIFT", GUI_RELAXED, "Modifier key to hold while middle clicking a trade,\nto toggle the global favorite state for that trade.\nGlobal favorites are used for villagers that don't\nhave any \"local\"/villager-specific favorites set.");
 
     public static final List<ConfigHotkey> HOTKEY_LIST = ImmutableList.of(
             OPEN_CONFIG_GUI,
+            OPEN_TRADE_CATALOG,
             TOGGLE_MOD_ON_OFF,
 
+            CRAFTER_LOAD_RECIPE,
+            CRAFTING_QUEUE_ADD,
+            CRAFTING_QUEUE_ADD_CHAIN,
+            CRAFTING_QUEUE_CLEAR,
             CRAFT_EVERYTHING,
             DROP_ALL_MATCHING,
+            DUMP_TRADE_METRICS,
+            FURNACE_LOAD,
             MASS_CRAFT,
             MOVE_CRAFT_RESULTS,
             RECIPE_VIEW,
             SLOT_DEBUG,
+            STONECUTTER_CUT_ALL,
             STORE_RECIPE,
             THROW_CRAFT_RESULTS,
             VILLAGER_TRADE_FAVORITES,
@@ -68,6 +85,7 @@ public class Hotkeys
             MODIFIER_MOVE_MATCHING,
             MODIFIER_MOVE_STACK,
             MODIFIER_TOGGLE_VILLAGER_GLOBAL_FAVORITE,
+            MODIFIER_VILLAGER_TRADE_PRIORITY,
 
             KEY_DRAG_FULL_STACKS,
             KEY_DRAG_LEAVE_ONE,
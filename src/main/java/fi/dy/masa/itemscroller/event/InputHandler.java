@@ -159,6 +159,7 @@ public class InputHandler implements IKeybindProvider, IKeyboardInputHandler, IM
                     ((EntityHitResult) mc.crosshairTarget).getEntity() instanceof MerchantEntity)
                 {
                     storage.setLastInteractedUUID(((EntityHitResult) mc.crosshairTarget).getEntity().getUuid());
+                    storage.setLastInteractedPos(((EntityHitResult) mc.crosshairTarget).getEntity().getBlockPos());
                 }
             }
 
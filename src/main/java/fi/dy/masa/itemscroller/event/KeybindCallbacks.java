@@ -1,8 +1,14 @@
 package fi.dy.masa.itemscroller.event;
 
+import java.io.File;
+import java.util.List;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.screen.ingame.AbstractFurnaceScreen;
+import net.minecraft.client.gui.screen.ingame.CrafterScreen;
 import net.minecraft.client.gui.screen.ingame.CreativeInventoryScreen;
 import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.client.gui.screen.ingame.StonecutterScreen;
+import net.minecraft.item.ItemStack;
 import net.minecraft.screen.slot.Slot;
 import fi.dy.masa.malilib.config.options.ConfigHotkey;
 import fi.dy.masa.malilib.gui.GuiBase;
@@ -17,10 +23,17 @@ import fi.dy.masa.itemscroller.ItemScroller;
 import fi.dy.masa.itemscroller.config.Configs;
 import fi.dy.masa.itemscroller.config.Hotkeys;
 import fi.dy.masa.itemscroller.gui.GuiConfigs;
+import fi.dy.masa.itemscroller.gui.GuiTradeCatalog;
+import fi.dy.masa.itemscroller.recipes.CraftingChainPlanner;
 import fi.dy.masa.itemscroller.recipes.CraftingHandler;
+import fi.dy.masa.itemscroller.recipes.CraftingJob;
+import fi.dy.masa.itemscroller.recipes.CraftingJobQueue;
 import fi.dy.masa.itemscroller.recipes.RecipePattern;
 import fi.dy.masa.itemscroller.recipes.RecipeStorage;
+import fi.dy.masa.itemscroller.recipes.StonecutterHandler;
 import fi.dy.masa.itemscroller.util.*;
+import fi.dy.masa.itemscroller.villager.TradeMetrics;
+import fi.dy.masa.itemscroller.villager.VillagerDataStorage;
 
 public class KeybindCallbacks implements IHotkeyCallback, IClientTickHandler
 {
@@ -86,6 +99,22 @@ public class KeybindCallbacks implements IHotkeyCallback, IClientTickHandler
             GuiBase.openGui(new GuiConfigs());
             return true;
         }
+        else if (key == Hotkeys.OPEN_TRADE_CATALOG.getKeybind())
+        {
+            GuiBase.openGui(new GuiTradeCatalog());
+            return true;
+        }
+        else if (key == Hotkeys.DUMP_TRADE_METRICS.getKeybind())
+        {
+            File file = TradeMetrics.getInstance().writeToFile();
+
+            if (file != null)
+            {
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.SUCCESS, "itemscroller.message.trade_metrics.written", file.getName());
+            }
+
+            return true;
+        }
 
         if (this.functionalityEnabled() == false ||
             (GuiUtils.getCurrentScreen() instanceof HandledScreen) == false ||
@@ -124,7 +153,73 @@ public class KeybindCallbacks implements IHotkeyCallback, IClientTickHandler
             }
         }
 
-        if (key == Hotkeys.CRAFT_EVERYTHING.getKeybind())
+        if (key == Hotkeys.CRAFTER_LOAD_RECIPE.getKeybind())
+        {
+            if (gui instanceof CrafterScreen crafterScreen &&
+                CrafterLoader.loadCrafterWithRecipe(recipes.getSelectedRecipe(), crafterScreen, Configs.Generic.CRAFTER_LOAD_CRAFT_COUNT.getIntegerValue()))
+            {
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.SUCCESS, "itemscroller.message.crafter.loaded",
+                                                 recipes.getSelectedRecipe().getResult().getName().getString());
+            }
+
+            return true;
+        }
+        else if (key == Hotkeys.FURNACE_LOAD.getKeybind())
+        {
+            if (gui instanceof AbstractFurnaceScreen<?> furnaceScreen)
+            {
+                FurnaceLoader.loadFurnace(furnaceScreen, slot);
+            }
+
+            return true;
+        }
+        else if (key == Hotkeys.STONECUTTER_CUT_ALL.getKeybind())
+        {
+            if (gui instanceof StonecutterScreen stonecutterScreen)
+            {
+                StonecutterHandler.getInstance().startJob(stonecutterScreen);
+            }
+
+            return true;
+        }
+        else if (key == Hotkeys.CRAFTING_QUEUE_ADD.getKeybind())
+        {
+            RecipePattern recipe = recipes.getSelectedRecipe();
+
+            if (recipe.isValid())
+            {
+                ItemStack result = recipe.getResult();
+                final int count = Configs.Generic.CRAFTING_QUEUE_ADD_COUNT.getIntegerValue();
+                CraftingJobQueue.getInstance().addJob(recipes.getSelection(), count);
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.INFO, "itemscroller.message.crafting_queue.job_added",
+                                                 count, result.getName().getString());
+            }
+
+            return true;
+        }
+        else if (key == Hotkeys.CRAFTING_QUEUE_ADD_CHAIN.getKeybind())
+        {
+            RecipePattern recipe = recipes.getSelectedRecipe();
+
+            if (recipe.isValid())
+            {
+                ItemStack result = recipe.getResult();
+                final int count = Configs.Generic.CRAFTING_QUEUE_ADD_COUNT.getIntegerValue();
+                List<CraftingJob> jobs = CraftingChainPlanner.planChain(recipes.getSelection(), count, mc.player.getInventory());
+                CraftingJobQueue.getInstance().addJobs(jobs);
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.INFO, "itemscroller.message.crafting_queue.chain_added",
+                                                 jobs.size(), count, result.getName().getString());
+            }
+
+            return true;
+        }
+        else if (key == Hotkeys.CRAFTING_QUEUE_CLEAR.getKeybind())
+        {
+            CraftingJobQueue.getInstance().clear();
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.INFO, "itemscroller.message.crafting_queue.cleared");
+            return true;
+        }
+        else if (key == Hotkeys.CRAFT_EVERYTHING.getKeybind())
         {
             InventoryUtils.craftEverythingPossibleWithCurrentRecipe(recipes.getSelectedRecipe(), gui);
             return true;
@@ -177,25 +272,52 @@ public class KeybindCallbacks implements IHotkeyCallback, IClientTickHandler
         }
 
         ClickPacketBuffer.sendBufferedPackets(Configs.Generic.PACKET_RATE_LIMIT.getIntegerValue());
-
-        if (ClickPacketBuffer.shouldCancelWindowClicks())
+        TradeMetrics.getInstance().onClientTick();
+        VillagerDataStorage.getInstance().unloadIdleShards();
+        StonecutterHandler.getInstance().onScreenCheck(GuiUtils.getCurrentScreen());
+
+        // The pipelined mass craft, the crafting queue and the stonecutter keep queuing more clicks behind the ones still in the buffer
+        if (ClickPacketBuffer.shouldCancelWindowClicks() &&
+            this.isMassCraftPipelined() == false &&
+            CraftingJobQueue.getInstance().isEmpty() &&
+            StonecutterHandler.getInstance().hasJobIn(GuiUtils.getCurrentScreen()) == false)
         {
             return;
         }
 
-        if (GuiUtils.getCurrentScreen() instanceof HandledScreen<?> gui &&
+        if ((GuiUtils.getCurrentScreen() instanceof HandledScreen<?> gui) &&
             (GuiUtils.getCurrentScreen() instanceof CreativeInventoryScreen) == false &&
-            Configs.GUI_BLACKLIST.contains(GuiUtils.getCurrentScreen().getClass().getName()) == false &&
-            Hotkeys.MASS_CRAFT.getKeybind().isKeybindHeld())
+            Configs.GUI_BLACKLIST.contains(GuiUtils.getCurrentScreen().getClass().getName()) == false)
+        {
+            this.runCraftingActions(mc, gui);
+        }
+    }
+
+    private void runCraftingActions(MinecraftClient mc, HandledScreen<?> gui)
+    {
+        if (gui instanceof StonecutterScreen stonecutterScreen)
+        {
+            this.runStonecutterActions(stonecutterScreen);
+            return;
+        }
+
+        if (Hotkeys.MASS_CRAFT.getKeybind().isKeybindHeld())
         {
-            if (++this.massCraftTicker < Configs.Generic.MASS_CRAFT_INTERVAL.getIntegerValue())
+            if (this.isMassCraftPipelined())
+            {
+                this.runPipelinedMassCraft(gui);
+                return;
+            }
+
+            if (ClickPacketBuffer.shouldCancelWindowClicks() ||
+                ++this.massCraftTicker < Configs.Generic.MASS_CRAFT_INTERVAL.getIntegerValue())
             {
                 return;
             }
 
-            Slot outputSlot = CraftingHandler.getFirstCraftingOutputSlotForGui(gui);
+            List<Slot> outputSlots = CraftingHandler.getCraftingOutputSlotsForGui(gui);
 
-            if (outputSlot != null)
+            if (outputSlots.isEmpty() == false)
             {
                 if (Configs.Generic.RATE_LIMIT_CLICK_PACKETS.getBooleanValue())
                 {
@@ -205,60 +327,190 @@ public class KeybindCallbacks implements IHotkeyCallback, IClientTickHandler
                 RecipePattern recipe = RecipeStorage.getInstance().getSelectedRecipe();
                 int limit = Configs.Generic.MASS_CRAFT_ITERATIONS.getIntegerValue();
 
+                InventoryUtils.setPredictedCraftingRecipe(recipe);
+
                 if (Configs.Generic.MASS_CRAFT_SWAPS.getBooleanValue())
                 {
                     for (int i = 0; i < limit; ++i)
                     {
+                        boolean craftedSomething = false;
+
                         InventoryUtils.tryClearCursor(gui);
                         InventoryUtils.setInhibitCraftingOutputUpdate(true);
                         InventoryUtils.throwAllCraftingResultsToGround(recipe, gui);
-                        InventoryUtils.throwAllNonRecipeItemsToGround(recipe, gui);
-                        InventoryUtils.setCraftingGridContentsUsingSwaps(gui, mc.player.getInventory(), recipe, outputSlot);
                         InventoryUtils.setInhibitCraftingOutputUpdate(false);
-                        InventoryUtils.updateCraftingOutputSlot(outputSlot);
 
-                        if (InventoryUtils.areStacksEqual(outputSlot.getStack(), recipe.getResult()) == false)
+                        for (Slot outputSlot : outputSlots)
                         {
-                            break;
+                            InventoryUtils.setInhibitCraftingOutputUpdate(true);
+                            InventoryUtils.throwAllNonRecipeItemsToGround(recipe, gui, outputSlot);
+                            InventoryUtils.setCraftingGridContentsUsingSwaps(gui, mc.player.getInventory(), recipe, outputSlot);
+                            InventoryUtils.setInhibitCraftingOutputUpdate(false);
+                            InventoryUtils.updateCraftingOutputSlot(outputSlot);
+
+                            if (InventoryUtils.areStacksEqual(outputSlot.getStack(), recipe.getResult()))
+                            {
+                                InventoryUtils.shiftClickSlot(gui, outputSlot.id);
+                                craftedSomething = true;
+                            }
                         }
 
-                        InventoryUtils.shiftClickSlot(gui, outputSlot.id);
+                        if (craftedSomething == false)
+                        {
+                            break;
+                        }
                     }
                 }
                 else
                 {
+                    CraftOutputSink sink = CraftOutputSink.create(recipe);
+                    sink.planTargets(gui);
                     int failsafe = 0;
 
                     while (++failsafe < limit)
                     {
+                        boolean craftedSomething = false;
+
                         InventoryUtils.tryClearCursor(gui);
                         InventoryUtils.setInhibitCraftingOutputUpdate(true);
                         InventoryUtils.throwAllCraftingResultsToGround(recipe, gui);
-                        InventoryUtils.throwAllNonRecipeItemsToGround(recipe, gui);
-                        InventoryUtils.tryMoveItemsToFirstCraftingGrid(recipe, gui, true);
                         InventoryUtils.setInhibitCraftingOutputUpdate(false);
-                        InventoryUtils.updateCraftingOutputSlot(outputSlot);
 
-                        if (InventoryUtils.areStacksEqual(outputSlot.getStack(), recipe.getResult()) == false)
+                        for (Slot outputSlot : outputSlots)
                         {
-                            break;
-                        }
+                            InventoryUtils.setInhibitCraftingOutputUpdate(true);
+                            InventoryUtils.throwAllNonRecipeItemsToGround(recipe, gui, outputSlot);
+                            InventoryUtils.tryMoveItemsToCraftingGridSlots(recipe, outputSlot, gui, true);
+                            InventoryUtils.setInhibitCraftingOutputUpdate(false);
+                            InventoryUtils.updateCraftingOutputSlot(outputSlot);
 
-                        if (Configs.Generic.CARPET_CTRL_Q_CRAFTING.getBooleanValue())
-                        {
-                            InventoryUtils.dropStack(gui, outputSlot.id);
+                            if (InventoryUtils.areStacksEqual(outputSlot.getStack(), recipe.getResult()) == false)
+                            {
+                                continue;
+                            }
+
+                            int crafts = InventoryUtils.getCraftCountInGrid(recipe, gui, outputSlot);
+
+                            if (sink.extract(gui, outputSlot, crafts) <= 0)
+                            {
+                                break;
+                            }
+
+                            craftedSomething = true;
                         }
-                        else
+
+                        if (craftedSomething == false)
                         {
-                            InventoryUtils.dropStacksWhileHasItem(gui, outputSlot.id, recipe.getResult());
+                            break;
                         }
                     }
                 }
 
+                InventoryUtils.setPredictedCraftingRecipe(null);
                 ClickPacketBuffer.setShouldBufferClickPackets(false);
             }
 
             this.massCraftTicker = 0;
         }
+        else if (CraftingJobQueue.getInstance().isEmpty() == false &&
+                 CraftingHandler.getFirstCraftingOutputSlotForGui(gui) != null)
+        {
+            int packetTarget = this.startPlanningPass(0);
+
+            if (packetTarget >= 0)
+            {
+                int limit = Configs.Generic.MASS_CRAFT_ITERATIONS.getIntegerValue();
+                CraftingJobQueue.getInstance().processJobs(gui, packetTarget, limit);
+                this.endPlanningPass();
+            }
+        }
+    }
+
+    private void runStonecutterActions(StonecutterScreen gui)
+    {
+        StonecutterHandler handler = StonecutterHandler.getInstance();
+
+        if (handler.hasJob() == false)
+        {
+            handler.rememberSelection(gui);
+            return;
+        }
+
+        int packetTarget = this.startPlanningPass(0);
+
+        if (packetTarget >= 0)
+        {
+            handler.processJob(gui, packetTarget, Configs.Generic.MASS_CRAFT_ITERATIONS.getIntegerValue());
+            this.endPlanningPass();
+        }
+    }
+
+    private boolean isMassCraftPipelined()
+    {
+        return Configs.Generic.MASS_CRAFT_PIPELINED.getBooleanValue() &&
+               Configs.Generic.MASS_CRAFT_SWAPS.getBooleanValue() == false;
+    }
+
+    private void runPipelinedMassCraft(HandledScreen<?> gui)
+    {
+        List<Slot> outputSlots = CraftingHandler.getCraftingOutputSlotsForGui(gui);
+
+        if (outputSlots.isEmpty())
+        {
+            return;
+        }
+
+        RecipePattern recipe = RecipeStorage.getInstance().getSelectedRecipe();
+        CraftOutputSink sink = CraftOutputSink.create(recipe);
+        int packetTarget = this.startPlanningPass(sink.getIterationClickBudget());
+
+        if (packetTarget < 0)
+        {
+            return;
+        }
+
+        int limit = Configs.Generic.MASS_CRAFT_ITERATIONS.getIntegerValue();
+
+        InventoryUtils.massCraftPipelined(recipe, gui, outputSlots, sink, packetTarget, limit);
+
+        this.endPlanningPass();
+    }
+
+    /**
+     * Checks whether more clicks should be planned on this tick, and starts buffering the clicks if so.
+     * @param iterationClicks the click budget of one planned iteration, which is added to the target
+     * so that the planner can queue whole iterations without the buffer running dry
+     * @return the number of buffered clicks to plan up to, or -1 if nothing should be planned on this tick
+     */
+    private int startPlanningPass(int iterationClicks)
+    {
+        final boolean rateLimit = Configs.Generic.RATE_LIMIT_CLICK_PACKETS.getBooleanValue();
+        final int packetRate = Configs.Generic.PACKET_RATE_LIMIT.getIntegerValue();
+        final int interval = Configs.Generic.MASS_CRAFT_INTERVAL.getIntegerValue();
+
+        if (rateLimit)
+        {
+            if (ClickPacketBuffer.getBufferedActionsCount() >= packetRate * interval)
+            {
+                return -1;
+            }
+
+            ClickPacketBuffer.setShouldBufferClickPackets(true);
+
+            // Keep enough clicks queued to last until the next planning pass, plus one tick of margin
+            return packetRate * (interval + 1) + iterationClicks;
+        }
+        else if (++this.massCraftTicker < interval)
+        {
+            return -1;
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    private void endPlanningPass()
+    {
+        ClickPacketBuffer.setShouldBufferClickPackets(false);
+        this.massCraftTicker = 0;
     }
 }
@@ -14,11 +14,14 @@ import fi.dy.masa.malilib.render.RenderUtils;
 import fi.dy.masa.malilib.util.GuiUtils;
 import fi.dy.masa.malilib.util.StringUtils;
 import fi.dy.masa.itemscroller.config.Configs;
+import fi.dy.masa.itemscroller.recipes.CraftingJob;
+import fi.dy.masa.itemscroller.recipes.CraftingJobQueue;
 import fi.dy.masa.itemscroller.recipes.RecipePattern;
 import fi.dy.masa.itemscroller.recipes.RecipeStorage;
 import fi.dy.masa.itemscroller.util.AccessorUtils;
 import fi.dy.masa.itemscroller.util.ClickPacketBuffer;
 import fi.dy.masa.itemscroller.util.InputUtils;
+import fi.dy.masa.itemscroller.util.InventoryCountTracker;
 import fi.dy.masa.itemscroller.util.InventoryUtils;
 
 public class RenderEventHandler
@@ -62,14 +65,28 @@ public class RenderEventHandler
 
             drawContext.drawText(this.mc.textRenderer, str, 16, -12, 0xC0C0C0C0, false);
 
+            final boolean renderCraftableCount = Configs.Generic.CRAFTING_RENDER_CRAFTABLE_COUNT.getBooleanValue() && this.mc.player != null;
+
+            if (renderCraftableCount)
+            {
+                InventoryCountTracker.getInstance().update(this.mc.player.getInventory());
+            }
+
             for (int i = 0, recipeId = first; recipeId <= lastOnPage; ++i, ++recipeId)
             {
-                ItemStack stack = recipes.getRecipe(recipeId).getResult();
+                RecipePattern recipe = recipes.getRecipe(recipeId);
+                ItemStack stack = recipe.getResult();
                 boolean selected = recipeId == recipes.getSelection();
                 int row = i % this.recipesPerColumn;
                 int column = i / this.recipesPerColumn;
 
                 this.renderStoredRecipeStack(stack, recipeId, row, column, gui, selected, drawContext);
+
+                if (renderCraftableCount && recipe.isValid())
+                {
+                    int count = InventoryCountTracker.getInstance().getCraftableCount(recipeId, recipe);
+                    this.renderCraftableCount(count, row, column, drawContext);
+                }
             }
 
             if (Configs.Generic.CRAFTING_RENDER_RECIPE_ITEMS.getBooleanValue())
@@ -88,6 +105,29 @@ public class RenderEventHandler
         }
     }
 
+    private void renderCraftingQueueProgress(MinecraftClient mc, DrawContext drawContext)
+    {
+        CraftingJobQueue queue = CraftingJobQueue.getInstance();
+
+        if (queue.isEmpty())
+        {
+            return;
+        }
+
+        RecipeStorage recipes = RecipeStorage.getInstance();
+        int y = 22;
+
+        drawContext.drawText(mc.textRenderer, StringUtils.translate("itemscroller.gui.label.crafting_queue", queue.getJobs().size()), 10, y, 0xFFD0D0D0, false);
+
+        for (CraftingJob job : queue.getJobs())
+        {
+            y += 10;
+            String name = recipes.getRecipe(job.getRecipeIndex()).getResult().getName().getString();
+            String str = StringUtils.translate("itemscroller.gui.label.crafting_queue_job", name, job.getCraftedCount(), job.getTargetCount());
+            drawContext.drawText(mc.textRenderer, str, 10, y, 0xFFD0D0D0, false);
+        }
+    }
+
     public void onDrawScreenPost(MinecraftClient mc, DrawContext drawContext)
     {
         this.renderRecipeView(drawContext);
@@ -103,6 +143,8 @@ public class RenderEventHandler
                 drawContext.drawText(mc.textRenderer, "Buffered slot clicks: " + bufferedCount, 10, 10, 0xFFD0D0D0, false);
             }
 
+            this.renderCraftingQueueProgress(mc, drawContext);
+
             if (InputUtils.isRecipeViewOpen() == false)
             {
                 return;
@@ -235,6 +277,25 @@ public class RenderEventHandler
         matrixStack.pop();
     }
 
+    private void renderCraftableCount(int count, int row, int column, DrawContext drawContext)
+    {
+        final TextRenderer font = this.mc.textRenderer;
+        final String countStr = String.valueOf(count);
+        float scale = 0.5F;
+        int x = column * this.columnWidth + this.gapColumn + this.numberTextWidth + 17 - (int) (font.getWidth(countStr) * scale);
+        int y = row * this.entryHeight + 17 - (int) (font.fontHeight * scale);
+
+        // TODO DrawContext still uses the MatrixStack type
+        MatrixStack matrixStack = drawContext.getMatrices();
+        matrixStack.push();
+        matrixStack.translate(x, y, 200);
+        matrixStack.scale(scale, scale, 1);
+
+        drawContext.drawText(font, countStr, 0, 0, count > 0 ? 0xFF60FF60 : 0xFFFF6060, true);
+
+        matrixStack.pop();
+    }
+
     private void renderRecipeItems(RecipePattern recipe, int recipeCountPerPage, HandledScreen<?> gui, DrawContext drawContext)
     {
         ItemStack[] items = recipe.getRecipeItems();
@@ -7,8 +7,14 @@ import net.minecraft.client.world.ClientWorld;
 import net.minecraft.registry.DynamicRegistryManager;
 import fi.dy.masa.malilib.interfaces.IWorldLoadListener;
 import fi.dy.masa.itemscroller.config.Configs;
+import fi.dy.masa.itemscroller.recipes.CraftingJobQueue;
 import fi.dy.masa.itemscroller.recipes.RecipeStorage;
+import fi.dy.masa.itemscroller.recipes.StonecutterHandler;
 import fi.dy.masa.itemscroller.util.ClickPacketBuffer;
+import fi.dy.masa.itemscroller.util.FurnaceLoader;
+import fi.dy.masa.itemscroller.util.InventoryCountTracker;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+import fi.dy.masa.itemscroller.villager.TradeMetrics;
 import fi.dy.masa.itemscroller.villager.VillagerDataStorage;
 
 public class WorldLoadListener implements IWorldLoadListener
@@ -28,6 +34,7 @@ public class WorldLoadListener implements IWorldLoadListener
     public void onWorldLoadPost(@Nullable ClientWorld worldBefore, @Nullable ClientWorld worldAfter, MinecraftClient mc)
     {
         RecipeStorage.getInstance().reset(worldAfter == null);
+        InventoryUtils.clearCraftingRecipeCache();
 
         // Logging in to a world, load the data
         if (worldBefore == null && worldAfter != null)
@@ -40,6 +47,11 @@ public class WorldLoadListener implements IWorldLoadListener
         if (worldAfter == null)
         {
             ClickPacketBuffer.reset();
+            CraftingJobQueue.getInstance().clear();
+            StonecutterHandler.getInstance().clear();
+            FurnaceLoader.clearFuelTimes();
+            InventoryCountTracker.getInstance().reset();
+            TradeMetrics.getInstance().reset();
         }
     }
 
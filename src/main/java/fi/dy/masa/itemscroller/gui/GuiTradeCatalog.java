@@ -0,0 +1,132 @@
+package fi.dy.masa.itemscroller.gui;
+
+import java.util.List;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import fi.dy.masa.itemscroller.villager.TradeCatalog;
+import fi.dy.masa.malilib.gui.GuiBase;
+import fi.dy.masa.malilib.gui.GuiTextFieldGeneric;
+import fi.dy.masa.malilib.gui.interfaces.ITextFieldListener;
+import fi.dy.masa.malilib.util.StringUtils;
+
+/**
+ * A search screen for the trade catalog, listing the villagers that
+ * sell the items matching the search text.
+ */
+public class GuiTradeCatalog extends GuiBase
+{
+    private static String lastSearch = "";
+
+    private List<TradeCatalog.Entry> results = List.of();
+    private int scrollOffset;
+
+    public GuiTradeCatalog()
+    {
+        this.setTitle(StringUtils.translate("itemscroller.gui.title.trade_catalog"));
+    }
+
+    @Override
+    public void initGui()
+    {
+        super.initGui();
+
+        GuiTextFieldGeneric textField = new GuiTextFieldGeneric(10, 26, 240, 16, this.textRenderer);
+        textField.setText(lastSearch);
+        textField.setFocused(true);
+        this.addTextField(textField, new SearchListener(this));
+        this.updateResults(lastSearch);
+    }
+
+    private void updateResults(String text)
+    {
+        lastSearch = text;
+        this.results = TradeCatalog.getInstance().search(text);
+        this.scrollOffset = 0;
+    }
+
+    private int getVisibleRows()
+    {
+        return Math.max(1, (this.height - 50 - 10) / 18);
+    }
+
+    @Override
+    public boolean onMouseScrolled(int mouseX, int mouseY, double horizontalAmount, double verticalAmount)
+    {
+        int maxOffset = Math.max(0, this.results.size() - this.getVisibleRows());
+        this.scrollOffset = Math.max(0, Math.min(maxOffset, this.scrollOffset + (verticalAmount < 0 ? 1 : -1)));
+        return true;
+    }
+
+    @Override
+    protected void drawContents(DrawContext drawContext, int mouseX, int mouseY, float partialTicks)
+    {
+        int x = 10;
+        int y = 50;
+        final long currentTime = System.currentTimeMillis();
+        final int end = Math.min(this.results.size(), this.scrollOffset + this.getVisibleRows());
+
+        String countStr = StringUtils.translate("itemscroller.gui.label.trade_catalog.results", this.results.size());
+        drawContext.drawText(this.textRenderer, countStr, 260, 30, 0xFFC0C0C0, false);
+
+        for (int i = this.scrollOffset; i < end; ++i)
+        {
+            TradeCatalog.Entry entry = this.results.get(i);
+            String price = getPriceString(entry);
+            String pos = entry.pos != null ? String.format("%d, %d, %d", entry.pos.getX(), entry.pos.getY(), entry.pos.getZ()) : "?";
+            String age = getAgeString(currentTime - entry.lastSeen);
+            String str = StringUtils.translate("itemscroller.gui.label.trade_catalog.entry",
+                                               entry.sellCount, entry.getDisplayName(), price, entry.remainingUses, pos, age);
+            int color = entry.remainingUses > 0 ? 0xFFFFFFFF : 0xFF808080;
+
+            drawContext.drawItem(new ItemStack(entry.sellItem), x, y);
+            drawContext.drawText(this.textRenderer, str, x + 20, y + 4, color, false);
+            y += 18;
+        }
+    }
+
+    private static String getPriceString(TradeCatalog.Entry entry)
+    {
+        String price = entry.buy1Count + " " + entry.buyItem1.getName().getString();
+
+        if (entry.buy2Count > 0 && entry.buyItem2 != Items.AIR)
+        {
+            price += " + " + entry.buy2Count + " " + entry.buyItem2.getName().getString();
+        }
+
+        return price;
+    }
+
+    private static String getAgeString(long age)
+    {
+        long minutes = age / 60000L;
+
+        if (minutes < 60)
+        {
+            return minutes + " min";
+        }
+        else if (minutes < 60 * 48)
+        {
+            return (minutes / 60) + " h";
+        }
+
+        return (minutes / (60 * 24)) + " d";
+    }
+
+    private static class SearchListener implements ITextFieldListener<GuiTextFieldGeneric>
+    {
+        private final GuiTradeCatalog gui;
+
+        private SearchListener(GuiTradeCatalog gui)
+        {
+            this.gui = gui;
+        }
+
+        @Override
+        public boolean onTextChange(GuiTextFieldGeneric textField)
+        {
+            this.gui.updateResults(textField.getText());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package fi.dy.masa.itemscroller.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import net.minecraft.recipe.AbstractCookingRecipe;
+import net.minecraft.recipe.RecipeType;
+import net.minecraft.screen.AbstractFurnaceScreenHandler;
+import net.minecraft.screen.PropertyDelegate;
+
+@Mixin(AbstractFurnaceScreenHandler.class)
+public interface IMixinAbstractFurnaceScreenHandler
+{
+    @Accessor("propertyDelegate")
+    PropertyDelegate itemscroller_getPropertyDelegate();
+
+    @Accessor("recipeType")
+    RecipeType<? extends AbstractCookingRecipe> itemscroller_getRecipeType();
+}
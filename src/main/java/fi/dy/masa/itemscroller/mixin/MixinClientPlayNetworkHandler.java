@@ -0,0 +1,26 @@
+package fi.dy.masa.itemscroller.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.play.SynchronizeRecipesS2CPacket;
+import net.minecraft.network.packet.s2c.play.UnlockRecipesS2CPacket;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+
+@Mixin(ClientPlayNetworkHandler.class)
+public abstract class MixinClientPlayNetworkHandler
+{
+    @Inject(method = "onSynchronizeRecipes", at = @At("TAIL"))
+    private void clearCachedRecipesOnRecipeSync(SynchronizeRecipesS2CPacket packet, CallbackInfo ci)
+    {
+        InventoryUtils.clearCraftingRecipeCache();
+    }
+
+    @Inject(method = "onUnlockRecipes", at = @At("TAIL"))
+    private void clearCachedRecipesOnRecipeBookSync(UnlockRecipesS2CPacket packet, CallbackInfo ci)
+    {
+        InventoryUtils.clearCraftingRecipeCache();
+    }
+}
@@ -32,6 +32,21 @@ public class MixinClientPlayerInteractionManager
             return;
         }
 
+        ClickPacketBuffer.countIssuedPacket();
+        netHandler.sendPacket(packet);
+    }
+
+    @Redirect(method = "clickButton", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/client/network/ClientPlayNetworkHandler;sendPacket(Lnet/minecraft/network/packet/Packet;)V"))
+    private void bufferButtonClickPackets(ClientPlayNetworkHandler netHandler, Packet<?> packet)
+    {
+        if (ClickPacketBuffer.shouldBufferClickPackets())
+        {
+            ClickPacketBuffer.bufferPacket(packet);
+            return;
+        }
+
+        ClickPacketBuffer.countIssuedPacket();
         netHandler.sendPacket(packet);
     }
 }
@@ -22,11 +22,13 @@ import fi.dy.masa.itemscroller.gui.ItemScrollerIcons;
 import fi.dy.masa.itemscroller.util.InventoryUtils;
 import fi.dy.masa.itemscroller.villager.FavoriteData;
 import fi.dy.masa.itemscroller.villager.IMerchantScreenHandler;
+import fi.dy.masa.itemscroller.villager.TradeMetrics;
 import fi.dy.masa.itemscroller.villager.VillagerData;
 import fi.dy.masa.itemscroller.villager.VillagerDataStorage;
 import fi.dy.masa.itemscroller.villager.VillagerUtils;
 import fi.dy.masa.malilib.gui.interfaces.IGuiIcon;
 import fi.dy.masa.malilib.render.RenderUtils;
+import fi.dy.masa.malilib.util.StringUtils;
 
 @Mixin(MerchantScreen.class)
 public abstract class MixinMerchantScreen extends HandledScreen<MerchantScreenHandler>
@@ -63,6 +65,23 @@ public abstract class MixinMerchantScreen extends HandledScreen<MerchantScreenHa
         }
     }
 
+    @Inject(method = "mouseScrolled", at = @At("HEAD"), cancellable = true)
+    private void onMouseScrollPre(double mouseX, double mouseY, double horizontalAmount, double verticalAmount, CallbackInfoReturnable<Boolean> cir)
+    {
+        if (Configs.Toggles.VILLAGER_TRADE_FEATURES.getBooleanValue() &&
+            Hotkeys.MODIFIER_VILLAGER_TRADE_PRIORITY.getKeybind().isKeybindHeld())
+        {
+            int visibleIndex = this.getHoveredTradeButtonIndex(mouseX, mouseY);
+
+            if (visibleIndex >= 0 && visibleIndex < this.handler.getRecipes().size())
+            {
+                TradeOffer trade = this.handler.getRecipes().get(visibleIndex);
+                VillagerDataStorage.getInstance().adjustTradePriority(trade, verticalAmount > 0 ? 1 : -1);
+                cir.setReturnValue(true);
+            }
+        }
+    }
+
     @Inject(method = "mouseScrolled", at = @At("RETURN"))
     private void onMouseScrollPost(double mouseX, double mouseY, double horizontalAmount, double verticalAmount, CallbackInfoReturnable<Boolean> cir)
     {
@@ -118,10 +137,15 @@ public abstract class MixinMerchantScreen extends HandledScreen<MerchantScreenHa
                         VillagerDataStorage.getInstance().toggleFavorite(realIndex);
                     }
 
-                    this.favoriteData = null; // Force a re-build of the list
+                    IMerchantScreenHandler handler = (IMerchantScreenHandler) this.handler;
+                    this.favoriteData = VillagerDataStorage.getInstance().getFavoritesForCurrentVillager(this.handler);
 
-                    // Rebuild the custom list based on the new favorites (See the Mixin for MerchantScreenHandler#setOffers())
-                    this.handler.setOffers(((IMerchantScreenHandler) this.handler).getOriginalList());
+                    // Move just the toggled trade if possible, otherwise rebuild the custom list
+                    // based on the new favorites (See the Mixin for MerchantScreenHandler#setOffers())
+                    if (handler.patchFavorite(realIndex, this.favoriteData) == false)
+                    {
+                        this.handler.setOffers(handler.getOriginalList());
+                    }
 
                     cir.setReturnValue(true);
                 }
@@ -176,7 +200,76 @@ public abstract class MixinMerchantScreen extends HandledScreen<MerchantScreenHa
                     y += 20;
                 }
             }
+
+            this.renderTradeOverlays(context);
+
+            if (Configs.Generic.VILLAGER_TRADE_METRICS_OVERLAY.getBooleanValue())
+            {
+                this.renderTradeMetrics(context);
+            }
+        }
+    }
+
+    private void renderTradeMetrics(DrawContext context)
+    {
+        TradeMetrics metrics = TradeMetrics.getInstance();
+        TradeMetrics.Stats villager = metrics.getVillagerStats(VillagerDataStorage.getInstance().getLastInteractedUUID());
+        int x = (this.width - this.backgroundWidth) / 2;
+        int y = (this.height - this.backgroundHeight) / 2 - 22;
+
+        context.getMatrices().push();
+        context.getMatrices().translate(0, 0, 300);
+
+        if (villager != null)
+        {
+            context.drawText(this.textRenderer, getMetricsString("itemscroller.gui.label.trade_metrics.villager", villager), x, y, 0xFFFFFFFF, true);
+        }
+
+        context.drawText(this.textRenderer, getMetricsString("itemscroller.gui.label.trade_metrics.session", metrics.getSessionStats()), x, y + 11, 0xFFFFFFFF, true);
+        context.getMatrices().pop();
+    }
+
+    private static String getMetricsString(String translationKey, TradeMetrics.Stats stats)
+    {
+        return StringUtils.translate(translationKey, stats.trades, stats.getTradesPerSecond(), stats.getPacketsPerTrade(),
+                                     stats.selectPackets, stats.failedAttempts);
+    }
+
+    /**
+     * Greys out the out of stock trades, and renders the non-zero trade priorities
+     */
+    private void renderTradeOverlays(DrawContext context)
+    {
+        VillagerDataStorage storage = VillagerDataStorage.getInstance();
+        int listSize = this.handler.getRecipes().size();
+        int screenX = (this.width - this.backgroundWidth) / 2;
+        int screenY = (this.height - this.backgroundHeight) / 2;
+        int buttonsStartX = screenX + 5;
+        int x = buttonsStartX + 89 - 8;
+        int y = screenY + 16 + 2;
+
+        context.getMatrices().push();
+        context.getMatrices().translate(0, 0, 300);
+
+        for (int i = this.indexStartOffset; i < listSize && i < this.indexStartOffset + 7; ++i)
+        {
+            if (storage.isOutOfStock(this.handler, i))
+            {
+                context.fill(buttonsStartX, y, buttonsStartX + 88, y + 20, 0x90303030);
+            }
+
+            int priority = storage.getTradePriority(this.handler.getRecipes().get(i));
+
+            if (priority != 0)
+            {
+                String str = String.valueOf(priority);
+                context.drawText(this.textRenderer, str, x + 8 - this.textRenderer.getWidth(str), y + 11, priority > 0 ? 0xFF55FF55 : 0xFFFF5555, true);
+            }
+
+            y += 20;
         }
+
+        context.getMatrices().pop();
     }
 
     private int getClampedIndex(int index)
@@ -14,14 +14,17 @@ import net.minecraft.screen.ScreenHandlerType;
 import net.minecraft.village.Merchant;
 import net.minecraft.village.TradeOfferList;
 import fi.dy.masa.itemscroller.config.Configs;
+import fi.dy.masa.itemscroller.villager.CustomTradeList;
+import fi.dy.masa.itemscroller.villager.FavoriteData;
 import fi.dy.masa.itemscroller.villager.IMerchantScreenHandler;
+import fi.dy.masa.itemscroller.villager.VillagerDataStorage;
 import fi.dy.masa.itemscroller.villager.VillagerUtils;
 
 @Mixin(MerchantScreenHandler.class)
 public abstract class MixinMerchantScreenHandler extends ScreenHandler implements IMerchantScreenHandler
 {
     @Shadow @Final private Merchant merchant;
-    @Nullable private TradeOfferList customList;
+    @Nullable private CustomTradeList customList;
 
     protected MixinMerchantScreenHandler(@Nullable ScreenHandlerType<?> type, int syncId)
     {
@@ -33,7 +36,7 @@ public abstract class MixinMerchantScreenHandler extends ScreenHandler implement
     {
         if (Configs.Toggles.VILLAGER_TRADE_FEATURES.getBooleanValue() && this.customList != null)
         {
-            cir.setReturnValue(this.customList);
+            cir.setReturnValue(this.customList.list);
         }
     }
 
@@ -43,6 +46,7 @@ public abstract class MixinMerchantScreenHandler extends ScreenHandler implement
         if (Configs.Toggles.VILLAGER_TRADE_FEATURES.getBooleanValue())
         {
             this.customList = VillagerUtils.buildCustomTradeList(offers);
+            VillagerDataStorage.getInstance().updateOfferSnapshot(offers);
         }
     }
 
@@ -51,4 +55,25 @@ public abstract class MixinMerchantScreenHandler extends ScreenHandler implement
     {
         return this.merchant.getOffers();
     }
+
+    @Override
+    public int getRealTradeIndex(int visibleIndex)
+    {
+        if (Configs.Toggles.VILLAGER_TRADE_FEATURES.getBooleanValue() && this.customList != null)
+        {
+            return this.customList.getRealIndex(visibleIndex);
+        }
+
+        // Not using a custom list, the visible list is the original list
+        TradeOfferList originalList = this.merchant.getOffers();
+        return originalList != null && visibleIndex >= 0 && visibleIndex < originalList.size() ? visibleIndex : -1;
+    }
+
+    @Override
+    public boolean patchFavorite(int realIndex, FavoriteData favorites)
+    {
+        return Configs.Toggles.VILLAGER_TRADE_FEATURES.getBooleanValue() &&
+               this.customList != null &&
+               this.customList.patchFavorite(realIndex, favorites);
+    }
 }
@@ -0,0 +1,169 @@
+package fi.dy.masa.itemscroller.recipes;
+
+import java.util.ArrayList;
+import java.util.List;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+import fi.dy.masa.itemscroller.util.ItemCountIndex;
+import fi.dy.masa.itemscroller.util.ItemType;
+
+/**
+ * Plans a crafting chain for a stored recipe, where the ingredients that are the result
+ * of some other stored recipe get crafted first, as separate stages of the chain.
+ * The stored recipes form a dependency DAG, which is ordered so that every stage
+ * comes after all the stages producing its ingredients.
+ */
+public class CraftingChainPlanner
+{
+    private final RecipeStorage storage;
+    /** Per recipe: ingredient type -> the stored recipe producing it */
+    private final Int2ObjectOpenHashMap<Object2IntOpenHashMap<ItemType>> producers = new Int2ObjectOpenHashMap<>();
+    private final Object2IntOpenHashMap<ItemType> producerForItem = new Object2IntOpenHashMap<>();
+    private final IntArrayList order = new IntArrayList();
+    private final byte[] visitState;
+
+    private CraftingChainPlanner(RecipeStorage storage)
+    {
+        this.storage = storage;
+        this.visitState = new byte[storage.getTotalRecipeCount()];
+        this.producerForItem.defaultReturnValue(-1);
+    }
+
+    /**
+     * Plans the stages needed to craft <b>targetCount</b> result items of the given stored recipe,
+     * using the items currently in the player's inventory.
+     * Every stage only crafts the exact amount that the later stages need. The crafting queue
+     * does the batching, with full stack grid fills and a capped last batch, see
+     * {@link fi.dy.masa.itemscroller.util.InventoryUtils#craftRecipeIntoPlayerInventory}.
+     * @return the jobs in the order they should be crafted, the last one being the requested recipe.
+     * Stages with nothing to craft are omitted.
+     */
+    public static List<CraftingJob> planChain(int recipeIndex, int targetCount, PlayerInventory inventory)
+    {
+        RecipeStorage storage = RecipeStorage.getInstance();
+        List<CraftingJob> jobs = new ArrayList<>();
+
+        if (storage.getRecipe(recipeIndex).isValid() == false || targetCount <= 0)
+        {
+            return jobs;
+        }
+
+        CraftingChainPlanner planner = new CraftingChainPlanner(storage);
+        planner.buildProducerMap(recipeIndex);
+        planner.visit(recipeIndex);
+
+        ItemCountIndex available = ItemCountIndex.fromPlayerInventory(inventory);
+        Int2IntOpenHashMap demand = planner.computeDemand(recipeIndex, targetCount, available);
+
+        // The order is dependencies first, so it is the crafting order as-is
+        for (int index : planner.order)
+        {
+            int count = demand.get(index);
+
+            if (count > 0)
+            {
+                jobs.add(new CraftingJob(index, count));
+            }
+        }
+
+        return jobs;
+    }
+
+    private void buildProducerMap(int rootIndex)
+    {
+        // The requested recipe itself takes priority, so that its own result isn't produced by something else
+        this.producerForItem.put(this.storage.getRecipe(rootIndex).getPlan().getResultKey(), rootIndex);
+
+        for (int i = 0; i < this.storage.getTotalRecipeCount(); ++i)
+        {
+            RecipePattern recipe = this.storage.getRecipe(i);
+
+            if (recipe.isValid())
+            {
+                this.producerForItem.putIfAbsent(recipe.getPlan().getResultKey(), i);
+            }
+        }
+    }
+
+    /**
+     * Depth first post-order walk of the dependency DAG. Edges that would close a cycle
+     * (like block <-> nuggets) are dropped, and those ingredients are treated as raw items.
+     */
+    private void visit(int index)
+    {
+        this.visitState[index] = 1;
+        Object2IntOpenHashMap<ItemType> edges = new Object2IntOpenHashMap<>();
+        edges.defaultReturnValue(-1);
+
+        for (RecipePlan.IngredientEntry entry : this.storage.getRecipe(index).getPlan().getIngredients())
+        {
+            int producer = this.producerForItem.getInt(entry.getType());
+
+            if (producer < 0 || producer == index || this.visitState[producer] == 1)
+            {
+                continue;
+            }
+
+            if (this.visitState[producer] == 0)
+            {
+                this.visit(producer);
+            }
+
+            edges.put(entry.getType(), producer);
+        }
+
+        this.producers.put(index, edges);
+        this.visitState[index] = 2;
+        this.order.add(index);
+    }
+
+    /**
+     * Propagates the item demand from the requested recipe down to its ingredient producers,
+     * consuming the available inventory items on the way.
+     * @return the number of result items needed from each stage
+     */
+    private Int2IntOpenHashMap computeDemand(int rootIndex, int targetCount, ItemCountIndex available)
+    {
+        Int2IntOpenHashMap demand = new Int2IntOpenHashMap();
+        demand.put(rootIndex, targetCount);
+
+        // Reverse topological order: every consumer is handled before the stages producing its ingredients
+        for (int i = this.order.size() - 1; i >= 0; --i)
+        {
+            int index = this.order.getInt(i);
+            int needed = demand.get(index);
+
+            if (needed <= 0)
+            {
+                continue;
+            }
+
+            RecipePattern recipe = this.storage.getRecipe(index);
+            ItemStack result = recipe.getResult();
+            int perCraft = Math.max(1, InventoryUtils.getStackSize(result));
+            int crafts = (needed + perCraft - 1) / perCraft;
+            Object2IntOpenHashMap<ItemType> edges = this.producers.get(index);
+
+            for (RecipePlan.IngredientEntry entry : recipe.getPlan().getIngredients())
+            {
+                ItemType type = entry.getType();
+                int amount = crafts * entry.getCountPerCraft();
+                amount -= available.removeAccepted(recipe, entry.getFirstCell(), amount);
+
+                int producer = edges.getInt(type);
+
+                if (amount > 0 && producer >= 0)
+                {
+                    demand.addTo(producer, amount);
+                }
+            }
+        }
+
+        return demand;
+    }
+}
@@ -1,7 +1,9 @@
 package fi.dy.masa.itemscroller.recipes;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
@@ -78,6 +80,27 @@ public class CraftingHandler
         return null;
     }
 
+    /**
+     * Returns all the crafting output slots in the given gui, for screens that have more than one crafting grid
+     */
+    public static List<Slot> getCraftingOutputSlotsForGui(HandledScreen<? extends ScreenHandler> gui)
+    {
+        List<Slot> slots = new ArrayList<>();
+
+        if (CRAFTING_GUIS.contains(gui.getClass()))
+        {
+            for (Slot slot : gui.getScreenHandler().slots)
+            {
+                if (getCraftingGridSlots(gui, slot) != null)
+                {
+                    slots.add(slot);
+                }
+            }
+        }
+
+        return slots;
+    }
+
     public static class CraftingOutputSlot
     {
         private final Class<? extends HandledScreen<?>> guiClass;
@@ -0,0 +1,55 @@
+package fi.dy.masa.itemscroller.recipes;
+
+public class CraftingJob
+{
+    private final int recipeIndex;
+    private int targetCount;
+    private int craftedCount;
+
+    public CraftingJob(int recipeIndex, int targetCount)
+    {
+        this.recipeIndex = recipeIndex;
+        this.targetCount = targetCount;
+    }
+
+    public int getRecipeIndex()
+    {
+        return this.recipeIndex;
+    }
+
+    /**
+     * @return the target number of result items for this job
+     */
+    public int getTargetCount()
+    {
+        return this.targetCount;
+    }
+
+    /**
+     * @return the number of result items crafted so far
+     */
+    public int getCraftedCount()
+    {
+        return this.craftedCount;
+    }
+
+    public int getRemainingCount()
+    {
+        return Math.max(0, this.targetCount - this.craftedCount);
+    }
+
+    public boolean isFinished()
+    {
+        return this.craftedCount >= this.targetCount;
+    }
+
+    void addTargetCount(int count)
+    {
+        this.targetCount += count;
+    }
+
+    void addCraftedCount(int count)
+    {
+        this.craftedCount += count;
+    }
+}
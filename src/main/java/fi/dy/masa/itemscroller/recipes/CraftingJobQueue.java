@@ -0,0 +1,197 @@
+package fi.dy.masa.itemscroller.recipes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import fi.dy.masa.malilib.gui.Message;
+import fi.dy.masa.malilib.util.InfoUtils;
+import fi.dy.masa.itemscroller.recipes.CraftingHandler.SlotRange;
+import fi.dy.masa.itemscroller.util.ClickPacketBuffer;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+
+/**
+ * A queue of (recipe index, target count) crafting jobs, which are crafted
+ * in order over multiple ticks while a crafting GUI is open.
+ */
+public class CraftingJobQueue
+{
+    private static final CraftingJobQueue INSTANCE = new CraftingJobQueue();
+
+    private final List<CraftingJob> jobs = new ArrayList<>();
+
+    public static CraftingJobQueue getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds a job to craft <b>targetCount</b> result items of the given stored recipe.
+     * If the last queued job is for the same recipe, then the count is added to that job instead.
+     */
+    public void addJob(int recipeIndex, int targetCount)
+    {
+        if (targetCount <= 0)
+        {
+            return;
+        }
+
+        CraftingJob last = this.jobs.isEmpty() ? null : this.jobs.get(this.jobs.size() - 1);
+
+        if (last != null && last.getRecipeIndex() == recipeIndex)
+        {
+            last.addTargetCount(targetCount);
+        }
+        else
+        {
+            this.jobs.add(new CraftingJob(recipeIndex, targetCount));
+        }
+    }
+
+    public void clear()
+    {
+        this.jobs.clear();
+    }
+
+    public boolean isEmpty()
+    {
+        return this.jobs.isEmpty();
+    }
+
+    public List<CraftingJob> getJobs()
+    {
+        return Collections.unmodifiableList(this.jobs);
+    }
+
+    @Nullable
+    public CraftingJob getCurrentJob()
+    {
+        return this.jobs.isEmpty() ? null : this.jobs.get(0);
+    }
+
+    /**
+     * Adds the jobs of a planned crafting chain to the end of the queue, in the given order.
+     */
+    public void addJobs(List<CraftingJob> jobs)
+    {
+        this.jobs.addAll(jobs);
+    }
+
+    /**
+     * Crafts the queued jobs in order, until the click buffer holds at least <b>packetTarget</b>
+     * clicks, or <b>maxIterations</b> rounds of grid refills have been done. Each round refills
+     * and crafts from every crafting grid of the screen that the current job's recipe fits into.
+     * If none of the grids can fit the recipe (for example a 3x3 recipe in the player inventory),
+     * then the queue is left as is, until a screen with a large enough grid is opened.
+     * If a job can't be crafted anymore (out of ingredients or inventory space), then the whole queue is stopped.
+     */
+    public void processJobs(HandledScreen<? extends ScreenHandler> gui, int packetTarget, int maxIterations)
+    {
+        List<Slot> outputSlots = CraftingHandler.getCraftingOutputSlotsForGui(gui);
+
+        if (outputSlots.isEmpty())
+        {
+            return;
+        }
+
+        RecipeStorage recipes = RecipeStorage.getInstance();
+        int iterations = 0;
+
+        while (this.jobs.isEmpty() == false &&
+               iterations < maxIterations &&
+               ClickPacketBuffer.getBufferedActionsCount() < packetTarget)
+        {
+            CraftingJob job = this.jobs.get(0);
+            RecipePattern recipe = recipes.getRecipe(job.getRecipeIndex());
+
+            if (recipe.isValid() == false)
+            {
+                this.jobs.remove(0);
+                continue;
+            }
+
+            List<Slot> gridOutputSlots = getOutputSlotsFittingRecipe(gui, outputSlots, recipe);
+
+            if (gridOutputSlots.isEmpty())
+            {
+                return;
+            }
+
+            ItemStack result = recipe.getResult();
+            int perCraft = Math.max(1, InventoryUtils.getStackSize(result));
+            boolean craftedSomething = false;
+
+            InventoryUtils.setPredictedCraftingRecipe(recipe);
+
+            for (Slot outputSlot : gridOutputSlots)
+            {
+                int craftsNeeded = (job.getRemainingCount() + perCraft - 1) / perCraft;
+
+                if (craftsNeeded <= 0)
+                {
+                    break;
+                }
+
+                int crafts = InventoryUtils.craftRecipeIntoPlayerInventory(recipe, gui, outputSlot, craftsNeeded);
+
+                if (crafts > 0)
+                {
+                    job.addCraftedCount(crafts * perCraft);
+                    craftedSomething = true;
+                }
+            }
+
+            InventoryUtils.setPredictedCraftingRecipe(null);
+
+            if (craftedSomething == false)
+            {
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.crafting_queue.stopped",
+                                                 result.getName().getString(), job.getCraftedCount(), job.getTargetCount());
+                this.jobs.clear();
+                InventoryUtils.clearAllCraftingGridsOfAllItems(gui);
+                return;
+            }
+
+            ++iterations;
+
+            if (job.isFinished())
+            {
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.SUCCESS, "itemscroller.message.crafting_queue.job_done",
+                                                 job.getCraftedCount(), result.getName().getString());
+                this.jobs.remove(0);
+
+                if (this.jobs.isEmpty())
+                {
+                    InventoryUtils.clearAllCraftingGridsOfAllItems(gui);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the crafting output slots of the screen, whose crafting grid is large enough for the given recipe
+     */
+    private static List<Slot> getOutputSlotsFittingRecipe(HandledScreen<? extends ScreenHandler> gui,
+                                                          List<Slot> outputSlots,
+                                                          RecipePattern recipe)
+    {
+        List<Slot> slots = new ArrayList<>();
+        final int numSlots = gui.getScreenHandler().slots.size();
+
+        for (Slot outputSlot : outputSlots)
+        {
+            SlotRange range = CraftingHandler.getCraftingGridSlots(gui, outputSlot);
+
+            if (range != null && range.getLast() < numSlots && recipe.getRecipeLength() <= range.getSlotCount())
+            {
+                slots.add(outputSlot);
+            }
+        }
+
+        return slots;
+    }
+}
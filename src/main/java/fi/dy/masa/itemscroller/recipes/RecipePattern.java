@@ -1,14 +1,32 @@
 package fi.dy.masa.itemscroller.recipes;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.inventory.RecipeInputInventory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.recipe.CraftingRecipe;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.RecipeEntry;
+import net.minecraft.recipe.RecipeType;
+import net.minecraft.recipe.ShapedRecipe;
 import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.registry.Registries;
 import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.CraftingResultSlot;
 import net.minecraft.screen.slot.Slot;
+import net.minecraft.util.Identifier;
+import net.minecraft.world.World;
+import fi.dy.masa.itemscroller.config.Configs;
+import fi.dy.masa.itemscroller.mixin.IMixinCraftingResultSlot;
 import fi.dy.masa.itemscroller.recipes.CraftingHandler.SlotRange;
 import fi.dy.masa.itemscroller.util.Constants;
 import fi.dy.masa.itemscroller.util.InventoryUtils;
@@ -17,6 +35,9 @@ public class RecipePattern
 {
     private ItemStack result = InventoryUtils.EMPTY_STACK;
     private ItemStack[] recipe = new ItemStack[9];
+    /** Per grid cell, the raw ids of all the items the server recipe's ingredient accepts, or null for exact matching */
+    @Nullable private IntOpenHashSet[] acceptors;
+    @Nullable private RecipePlan plan;
 
     public RecipePattern()
     {
@@ -28,6 +49,7 @@ public class RecipePattern
         if (this.getRecipeLength() != size)
         {
             this.recipe = new ItemStack[size];
+            this.plan = null;
         }
     }
 
@@ -35,6 +57,8 @@ public class RecipePattern
     {
         Arrays.fill(this.recipe, InventoryUtils.EMPTY_STACK);
         this.result = InventoryUtils.EMPTY_STACK;
+        this.acceptors = null;
+        this.plan = null;
     }
 
     public void ensureRecipeSizeAndClearRecipe(int size)
@@ -63,6 +87,13 @@ public class RecipePattern
                 }
 
                 this.result = slot.getStack().copy();
+                this.plan = null;
+
+                if (slot instanceof CraftingResultSlot && MinecraftClient.getInstance().world != null)
+                {
+                    RecipeInputInventory craftingInv = ((IMixinCraftingResultSlot) slot).itemscroller_getCraftingInventory();
+                    this.storeIngredientAcceptors(craftingInv, MinecraftClient.getInstance().world);
+                }
             }
             else if (clearIfEmpty)
             {
@@ -84,6 +115,156 @@ public class RecipePattern
         }
 
         this.result = InventoryUtils.isStackEmpty(other.getResult()) == false ? other.getResult().copy() : InventoryUtils.EMPTY_STACK;
+        this.plan = null;
+
+        if (other.acceptors != null && other.acceptors.length == size)
+        {
+            this.acceptors = new IntOpenHashSet[size];
+
+            for (int i = 0; i < size; i++)
+            {
+                this.acceptors[i] = other.acceptors[i] != null ? new IntOpenHashSet(other.acceptors[i]) : null;
+            }
+        }
+    }
+
+    /**
+     * Stores the acceptor sets of the server recipe matching the current grid contents,
+     * for the cells whose ingredient accepts more than one item (ie. item tags like planks)
+     */
+    private void storeIngredientAcceptors(RecipeInputInventory craftingInv, World world)
+    {
+        Optional<RecipeEntry<CraftingRecipe>> optional = world.getRecipeManager().getFirstMatch(RecipeType.CRAFTING, craftingInv, world);
+
+        if (optional.isEmpty() || craftingInv.size() != this.recipe.length)
+        {
+            return;
+        }
+
+        Ingredient[] ingredients = getIngredientsPerCell(optional.get().value(), craftingInv);
+
+        if (ingredients == null)
+        {
+            return;
+        }
+
+        IntOpenHashSet[] sets = new IntOpenHashSet[this.recipe.length];
+        boolean hasAny = false;
+
+        for (int i = 0; i < ingredients.length; i++)
+        {
+            if (ingredients[i] != null)
+            {
+                IntOpenHashSet set = new IntOpenHashSet();
+
+                for (ItemStack stack : ingredients[i].getMatchingStacks())
+                {
+                    set.add(Registries.ITEM.getRawId(stack.getItem()));
+                }
+
+                if (set.size() > 1)
+                {
+                    sets[i] = set;
+                    hasAny = true;
+                }
+            }
+        }
+
+        this.acceptors = hasAny ? sets : null;
+    }
+
+    /**
+     * Maps the recipe's ingredients to the grid cells holding the items they matched.
+     * @return the ingredient per cell, or null if the mapping couldn't be determined
+     */
+    @Nullable
+    private static Ingredient[] getIngredientsPerCell(CraftingRecipe recipe, RecipeInputInventory craftingInv)
+    {
+        List<Ingredient> ingredients = recipe.getIngredients();
+        Ingredient[] perCell = new Ingredient[craftingInv.size()];
+
+        if (recipe instanceof ShapedRecipe shaped)
+        {
+            final int gridWidth = craftingInv.getWidth();
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+
+            for (int i = 0; i < perCell.length; i++)
+            {
+                if (craftingInv.getStack(i).isEmpty() == false)
+                {
+                    minX = Math.min(minX, i % gridWidth);
+                    minY = Math.min(minY, i / gridWidth);
+                }
+            }
+
+            // Try both the normal and the mirrored orientation
+            for (int mirror = 0; mirror < 2; mirror++)
+            {
+                boolean matches = true;
+
+                for (int i = 0; i < perCell.length && matches; i++)
+                {
+                    ItemStack stack = craftingInv.getStack(i);
+
+                    if (stack.isEmpty())
+                    {
+                        perCell[i] = null;
+                        continue;
+                    }
+
+                    int x = i % gridWidth - minX;
+                    int y = i / gridWidth - minY;
+
+                    if (x >= shaped.getWidth() || y >= shaped.getHeight())
+                    {
+                        matches = false;
+                        break;
+                    }
+
+                    int index = (mirror == 1 ? shaped.getWidth() - 1 - x : x) + y * shaped.getWidth();
+                    perCell[i] = ingredients.get(index);
+                    matches = perCell[i].test(stack);
+                }
+
+                if (matches)
+                {
+                    return perCell;
+                }
+            }
+
+            return null;
+        }
+
+        // Shapeless, match each cell to the first unused ingredient accepting its item
+        boolean[] used = new boolean[ingredients.size()];
+
+        for (int i = 0; i < perCell.length; i++)
+        {
+            ItemStack stack = craftingInv.getStack(i);
+
+            if (stack.isEmpty())
+            {
+                continue;
+            }
+
+            for (int j = 0; j < used.length; j++)
+            {
+                if (used[j] == false && ingredients.get(j).test(stack))
+                {
+                    used[j] = true;
+                    perCell[i] = ingredients.get(j);
+                    break;
+                }
+            }
+
+            if (perCell[i] == null)
+            {
+                return null;
+            }
+        }
+
+        return perCell;
     }
 
     public void readFromNBT(@Nonnull NbtCompound nbt, @Nonnull DynamicRegistryManager registryManager)
@@ -111,9 +292,53 @@ public class RecipePattern
             }
 
             this.result = ItemStack.fromNbtOrEmpty(registryManager, nbt.getCompound("Result"));
+            this.plan = null;
+
+            if (nbt.contains("Acceptors", Constants.NBT.TAG_LIST))
+            {
+                this.readAcceptorsFromNBT(nbt.getList("Acceptors", Constants.NBT.TAG_COMPOUND));
+            }
         }
     }
 
+    private void readAcceptorsFromNBT(NbtList list)
+    {
+        IntOpenHashSet[] sets = new IntOpenHashSet[this.recipe.length];
+        boolean hasAny = false;
+
+        for (int i = 0; i < list.size(); i++)
+        {
+            NbtCompound tag = list.getCompound(i);
+            int slot = tag.getInt("Slot");
+            NbtList items = tag.getList("Items", Constants.NBT.TAG_STRING);
+
+            if (slot < 0 || slot >= sets.length)
+            {
+                continue;
+            }
+
+            IntOpenHashSet set = new IntOpenHashSet();
+
+            for (int j = 0; j < items.size(); j++)
+            {
+                Identifier id = Identifier.tryParse(items.getString(j));
+
+                if (id != null && Registries.ITEM.containsId(id))
+                {
+                    set.add(Registries.ITEM.getRawId(Registries.ITEM.get(id)));
+                }
+            }
+
+            if (set.size() > 1)
+            {
+                sets[slot] = set;
+                hasAny = true;
+            }
+        }
+
+        this.acceptors = hasAny ? sets : null;
+    }
+
     @Nonnull
     public NbtCompound writeToNBT(@Nonnull DynamicRegistryManager registryManager)
     {
@@ -141,6 +366,27 @@ public class RecipePattern
             }
 
             nbt.put("Ingredients", tagIngredients);
+
+            if (this.acceptors != null)
+            {
+                NbtList tagAcceptors = new NbtList();
+
+                for (int i = 0; i < this.acceptors.length; i++)
+                {
+                    if (this.acceptors[i] != null)
+                    {
+                        NbtList items = new NbtList();
+                        this.acceptors[i].forEach(rawId -> items.add(NbtString.of(Registries.ITEM.getId(Registries.ITEM.get(rawId)).toString())));
+
+                        tag = new NbtCompound();
+                        tag.putInt("Slot", i);
+                        tag.put("Items", items);
+                        tagAcceptors.add(tag);
+                    }
+                }
+
+                nbt.put("Acceptors", tagAcceptors);
+            }
         }
 
         return nbt;
@@ -168,6 +414,53 @@ public class RecipePattern
         return this.recipe;
     }
 
+    /**
+     * Returns the compiled plan of this recipe. It is built on first use,
+     * and rebuilt after the recipe has been changed.
+     */
+    public RecipePlan getPlan()
+    {
+        RecipePlan plan = this.plan;
+
+        if (plan == null)
+        {
+            plan = new RecipePlan(this.recipe, this.getResult());
+            this.plan = plan;
+        }
+
+        return plan;
+    }
+
+    public boolean hasIngredientAcceptors()
+    {
+        return this.acceptors != null && Configs.Generic.CRAFTING_TAG_AWARE_INGREDIENTS.getBooleanValue();
+    }
+
+    /**
+     * Checks if the given stack is accepted in the given grid cell of this recipe.
+     * This is an exact match, unless the tag aware ingredients are enabled and the cell's
+     * server recipe ingredient accepts several items, in which case any of those items
+     * without custom components is accepted.
+     */
+    public boolean isAcceptedInSlot(int index, ItemStack stack)
+    {
+        if (index < 0 || index >= this.recipe.length)
+        {
+            return false;
+        }
+
+        if (InventoryUtils.areStacksEqual(this.recipe[index], stack))
+        {
+            return true;
+        }
+
+        return this.hasIngredientAcceptors() &&
+               this.acceptors[index] != null &&
+               InventoryUtils.isStackEmpty(stack) == false &&
+               stack.getComponentChanges().isEmpty() &&
+               this.acceptors[index].contains(Registries.ITEM.getRawId(stack.getItem()));
+    }
+
     public boolean isValid()
     {
         return InventoryUtils.isStackEmpty(this.getResult()) == false;
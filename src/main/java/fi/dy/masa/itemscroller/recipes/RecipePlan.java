@@ -0,0 +1,101 @@
+package fi.dy.masa.itemscroller.recipes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntLists;
+import net.minecraft.item.ItemStack;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+import fi.dy.masa.itemscroller.util.ItemType;
+
+/**
+ * The facts about a stored recipe that the grid fill and the planners need on every refill,
+ * compiled once per recipe. See {@link RecipePattern#getPlan()}.
+ */
+public class RecipePlan
+{
+    private final List<IngredientEntry> ingredients;
+    private final ItemType resultKey;
+    private final boolean[] usedCells;
+
+    RecipePlan(ItemStack[] recipeItems, ItemStack result)
+    {
+        List<IngredientEntry> list = new ArrayList<>();
+
+        for (Map.Entry<ItemType, IntArrayList> entry : ItemType.getSlotsPerItem(recipeItems).entrySet())
+        {
+            list.add(new IngredientEntry(entry.getKey(), entry.getValue()));
+        }
+
+        this.ingredients = Collections.unmodifiableList(list);
+        this.resultKey = new ItemType(result);
+        this.usedCells = new boolean[recipeItems.length];
+
+        for (int i = 0; i < recipeItems.length; ++i)
+        {
+            this.usedCells[i] = InventoryUtils.isStackEmpty(recipeItems[i]) == false;
+        }
+    }
+
+    /**
+     * @return the distinct ingredients of the recipe
+     */
+    public List<IngredientEntry> getIngredients()
+    {
+        return this.ingredients;
+    }
+
+    public ItemType getResultKey()
+    {
+        return this.resultKey;
+    }
+
+    /**
+     * @return true if the given grid cell holds an ingredient in this recipe
+     */
+    public boolean isCellUsed(int cell)
+    {
+        return cell >= 0 && cell < this.usedCells.length && this.usedCells[cell];
+    }
+
+    public static class IngredientEntry
+    {
+        private final ItemType type;
+        private final IntList cells;
+
+        private IngredientEntry(ItemType type, IntArrayList cells)
+        {
+            this.type = type;
+            this.cells = IntLists.unmodifiable(cells);
+        }
+
+        public ItemType getType()
+        {
+            return this.type;
+        }
+
+        /**
+         * @return the recipe grid cell indices that use this ingredient
+         */
+        public IntList getCells()
+        {
+            return this.cells;
+        }
+
+        public int getFirstCell()
+        {
+            return this.cells.getInt(0);
+        }
+
+        /**
+         * @return the number of these items used by one craft
+         */
+        public int getCountPerCraft()
+        {
+            return this.cells.size();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package fi.dy.masa.itemscroller.recipes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.screen.Screen;
+import net.minecraft.client.gui.screen.ingame.StonecutterScreen;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.RecipeEntry;
+import net.minecraft.recipe.StonecuttingRecipe;
+import net.minecraft.screen.StonecutterScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import fi.dy.masa.malilib.gui.Message;
+import fi.dy.masa.malilib.util.InfoUtils;
+import fi.dy.masa.itemscroller.util.ClickPacketBuffer;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+import fi.dy.masa.itemscroller.util.ItemCountIndex;
+import fi.dy.masa.itemscroller.util.ItemType;
+
+/**
+ * Bulk stonecutting. The output the player selects in the stonecutter is remembered
+ * per input item, and a cutting job then loops: fill the input slot, select the remembered
+ * recipe, and shift-click the output, for exactly the number of input items that were
+ * in the inventory when the job was started.
+ */
+public class StonecutterHandler
+{
+    private static final StonecutterHandler INSTANCE = new StonecutterHandler();
+
+    private static final int SLOT_INPUT = 0;
+    private static final int SLOT_OUTPUT = 1;
+
+    private final Map<ItemType, ItemType> selectedOutputs = new HashMap<>();
+    @Nullable private StonecutterScreenHandler jobScreenHandler;
+    @Nullable private ItemType jobInput;
+    @Nullable private ItemType jobOutput;
+    private int jobRemaining;
+    private int jobTotal;
+
+    public static StonecutterHandler getInstance()
+    {
+        return INSTANCE;
+    }
+
+    public void clear()
+    {
+        this.selectedOutputs.clear();
+        this.stopJob();
+    }
+
+    public boolean hasJob()
+    {
+        return this.jobInput != null;
+    }
+
+    /**
+     * @return true if there is a job running in the given screen
+     */
+    public boolean hasJobIn(@Nullable Screen screen)
+    {
+        return this.hasJob() && screen instanceof StonecutterScreen gui && gui.getScreenHandler() == this.jobScreenHandler;
+    }
+
+    /**
+     * Ends the current job if the stonecutter screen that started it is no longer open,
+     * so that the job doesn't resume with its old counts in some later stonecutter screen.
+     */
+    public void onScreenCheck(@Nullable Screen currentScreen)
+    {
+        if (this.hasJob() && this.hasJobIn(currentScreen) == false)
+        {
+            this.cancelJob();
+        }
+    }
+
+    public void stopJob()
+    {
+        this.jobScreenHandler = null;
+        this.jobInput = null;
+        this.jobOutput = null;
+        this.jobRemaining = 0;
+        this.jobTotal = 0;
+    }
+
+    /**
+     * Remembers the output the player has currently selected for the current input item
+     */
+    public void rememberSelection(StonecutterScreen gui)
+    {
+        if (this.hasJob())
+        {
+            return;
+        }
+
+        StonecutterScreenHandler handler = gui.getScreenHandler();
+        ItemStack input = handler.getSlot(SLOT_INPUT).getStack();
+        int selected = handler.getSelectedRecipe();
+
+        if (input.isEmpty() == false && selected >= 0 && selected < handler.getAvailableRecipeCount())
+        {
+            ItemStack output = this.getRecipeOutput(handler.getAvailableRecipes().get(selected));
+
+            if (output.isEmpty() == false)
+            {
+                this.selectedOutputs.put(new ItemType(input), new ItemType(output));
+            }
+        }
+    }
+
+    /**
+     * Starts cutting all the items of the current input item type in the player inventory
+     * into the remembered output for that item.
+     */
+    public void startJob(StonecutterScreen gui)
+    {
+        MinecraftClient mc = MinecraftClient.getInstance();
+        ItemStack input = gui.getScreenHandler().getSlot(SLOT_INPUT).getStack();
+
+        if (input.isEmpty() || mc.player == null)
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.stonecutter.no_input");
+            return;
+        }
+
+        ItemType inputType = new ItemType(input);
+        ItemType outputType = this.selectedOutputs.get(inputType);
+
+        if (outputType == null)
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.stonecutter.no_output_selected",
+                                             input.getName().getString());
+            return;
+        }
+
+        // Exact count planning: the items in the input slot plus all the same items in the inventory
+        int total = InventoryUtils.getStackSize(input) + ItemCountIndex.fromPlayerInventory(mc.player.getInventory()).getCount(inputType);
+
+        this.jobScreenHandler = gui.getScreenHandler();
+        this.jobInput = inputType;
+        this.jobOutput = outputType;
+        this.jobRemaining = total;
+        this.jobTotal = total;
+
+        InfoUtils.showGuiOrInGameMessage(Message.MessageType.INFO, "itemscroller.message.stonecutter.started",
+                                         total, input.getName().getString(), outputType.getStack().getName().getString());
+    }
+
+    /**
+     * Plans the cutting clicks until the click buffer holds at least <b>packetTarget</b> clicks
+     */
+    public void processJob(StonecutterScreen gui, int packetTarget, int maxIterations)
+    {
+        if (this.jobInput == null || this.jobOutput == null)
+        {
+            return;
+        }
+
+        if (this.hasJobIn(gui) == false)
+        {
+            this.cancelJob();
+            return;
+        }
+
+        StonecutterScreenHandler handler = gui.getScreenHandler();
+        int iterations = 0;
+
+        while (this.jobRemaining > 0 && iterations < maxIterations &&
+               ClickPacketBuffer.getBufferedActionsCount() < packetTarget)
+        {
+            ++iterations;
+
+            if (this.fillInputSlot(gui, handler) == false)
+            {
+                break;
+            }
+
+            int index = this.getRecipeIndexForOutput(handler, this.jobOutput);
+
+            if (index < 0)
+            {
+                this.finishJob(false);
+                return;
+            }
+
+            if (handler.getSelectedRecipe() != index)
+            {
+                InventoryUtils.selectScreenHandlerButton(gui, index);
+            }
+
+            int inputBefore = InventoryUtils.getStackSize(handler.getSlot(SLOT_INPUT).getStack());
+            InventoryUtils.shiftClickSlot(gui, SLOT_OUTPUT);
+            int used = inputBefore - InventoryUtils.getStackSize(handler.getSlot(SLOT_INPUT).getStack());
+
+            // No inventory space left for the outputs
+            if (used <= 0)
+            {
+                this.finishJob(false);
+                return;
+            }
+
+            this.jobRemaining -= used;
+        }
+
+        if (this.jobRemaining <= 0 || this.hasInputItems(handler) == false)
+        {
+            this.finishJob(this.jobRemaining <= 0);
+        }
+    }
+
+    private void finishJob(boolean completed)
+    {
+        String outputName = this.jobOutput != null ? this.jobOutput.getStack().getName().getString() : "";
+        int done = this.jobTotal - Math.max(this.jobRemaining, 0);
+
+        if (completed)
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.SUCCESS, "itemscroller.message.stonecutter.done", done, outputName);
+        }
+        else
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.stonecutter.stopped", done, this.jobTotal, outputName);
+        }
+
+        this.stopJob();
+    }
+
+    private void cancelJob()
+    {
+        String outputName = this.jobOutput != null ? this.jobOutput.getStack().getName().getString() : "";
+        int done = this.jobTotal - Math.max(this.jobRemaining, 0);
+
+        InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.stonecutter.cancelled", done, this.jobTotal, outputName);
+        this.stopJob();
+    }
+
+    /**
+     * Tops up the input slot from the player inventory, but never with more items than the job still has left
+     * @return true if the input slot has the job's input items afterwards
+     */
+    private boolean fillInputSlot(StonecutterScreen gui, StonecutterScreenHandler handler)
+    {
+        ItemStack inputStack = handler.getSlot(SLOT_INPUT).getStack();
+        ItemStack reference = this.jobInput.getStack();
+
+        if (inputStack.isEmpty() == false && InventoryUtils.areStacksEqual(inputStack, reference) == false)
+        {
+            return false;
+        }
+
+        if (inputStack.isEmpty())
+        {
+            Slot source = this.getSourceSlot(handler, reference);
+
+            if (source == null)
+            {
+                return false;
+            }
+
+            InventoryUtils.leftClickSlot(gui, source.id);
+
+            if (InventoryUtils.getStackSize(handler.getCursorStack()) > this.jobRemaining)
+            {
+                // Only move the remaining planned amount, one item at a time
+                for (int i = 0; i < this.jobRemaining; ++i)
+                {
+                    InventoryUtils.rightClickSlot(gui, SLOT_INPUT);
+                }
+            }
+            else
+            {
+                InventoryUtils.leftClickSlot(gui, SLOT_INPUT);
+            }
+
+            if (handler.getCursorStack().isEmpty() == false)
+            {
+                InventoryUtils.leftClickSlot(gui, source.id);
+            }
+        }
+
+        return InventoryUtils.areStacksEqual(handler.getSlot(SLOT_INPUT).getStack(), reference);
+    }
+
+    private boolean hasInputItems(StonecutterScreenHandler handler)
+    {
+        return InventoryUtils.areStacksEqual(handler.getSlot(SLOT_INPUT).getStack(), this.jobInput.getStack()) ||
+               this.getSourceSlot(handler, this.jobInput.getStack()) != null;
+    }
+
+    @Nullable
+    private Slot getSourceSlot(StonecutterScreenHandler handler, ItemStack reference)
+    {
+        Slot best = null;
+
+        for (Slot slot : handler.slots)
+        {
+            if (slot.id > SLOT_OUTPUT && InventoryUtils.areStacksEqual(slot.getStack(), reference) &&
+                (best == null || slot.getStack().getCount() > best.getStack().getCount()))
+            {
+                best = slot;
+            }
+        }
+
+        return best;
+    }
+
+    private int getRecipeIndexForOutput(StonecutterScreenHandler handler, ItemType output)
+    {
+        List<RecipeEntry<StonecuttingRecipe>> recipes = handler.getAvailableRecipes();
+
+        for (int i = 0; i < recipes.size(); ++i)
+        {
+            if (InventoryUtils.areStacksEqual(this.getRecipeOutput(recipes.get(i)), output.getStack()))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private ItemStack getRecipeOutput(RecipeEntry<StonecuttingRecipe> entry)
+    {
+        MinecraftClient mc = MinecraftClient.getInstance();
+
+        if (mc.world == null)
+        {
+            return ItemStack.EMPTY;
+        }
+
+        return entry.value().getResult(mc.world.getRegistryManager());
+    }
+}
@@ -0,0 +1,140 @@
+package fi.dy.masa.itemscroller.util;
+
+import com.google.gson.JsonObject;
+import fi.dy.masa.malilib.util.JsonUtils;
+import fi.dy.masa.malilib.util.StringUtils;
+import fi.dy.masa.itemscroller.ItemScroller;
+import fi.dy.masa.itemscroller.config.Configs;
+
+/**
+ * A simple cost model for the different slot click primitives, used to pick
+ * the cheapest click sequence for moving items into crafting grids.
+ * The cost of a sequence is the number of packets times the packet weight,
+ * plus the extra server-side handling weight of the QUICK_CRAFT and SWAP packets.
+ */
+public class ClickCostModel
+{
+    public enum GridFillStrategy
+    {
+        /** Pick up a source stack and drag-split it over all the target slots, repeated until they are full */
+        DRAG_SPLIT,
+        /** Pick up a full source stack and place it into one target slot, for each target slot */
+        PICKUP_PLACE,
+        /** Swap a full hotbar stack into each target slot */
+        HOTBAR_SWAP
+    }
+
+    /**
+     * Selects the cheapest strategy for filling <b>targetSlots</b> empty grid slots with full stacks.
+     * @param dragPasses the number of source stacks the drag-split needs to fill all the slots
+     * @param fullStacks the number of full source stacks available
+     * @param hotbarFullStacks the number of full source stacks available in the hotbar and offhand
+     */
+    public static GridFillStrategy selectGridFillStrategy(int targetSlots, int dragPasses, int fullStacks, int hotbarFullStacks)
+    {
+        Weights weights = getWeights();
+        GridFillStrategy best = GridFillStrategy.DRAG_SPLIT;
+        int dragCost = getDragSplitCost(targetSlots, dragPasses, weights);
+        int pickupCost = fullStacks >= targetSlots ? getPickupPlaceCost(targetSlots, weights) : -1;
+        int swapCost = hotbarFullStacks >= targetSlots ? getHotbarSwapCost(targetSlots, weights) : -1;
+        int bestCost = dragCost;
+
+        if (pickupCost >= 0 && pickupCost < bestCost)
+        {
+            best = GridFillStrategy.PICKUP_PLACE;
+            bestCost = pickupCost;
+        }
+
+        if (swapCost >= 0 && swapCost < bestCost)
+        {
+            best = GridFillStrategy.HOTBAR_SWAP;
+            bestCost = swapCost;
+        }
+
+        if (Configs.Generic.CLICK_COST_LOGGING.getBooleanValue())
+        {
+            ItemScroller.logger.info("Grid fill of {} slots: drag split = {} ({} passes), pickup + place = {}, hotbar swap = {} => {} (cost {}, weights {})",
+                                     targetSlots, dragCost, dragPasses, pickupCost, swapCost, best, bestCost, weights);
+        }
+
+        return best;
+    }
+
+    public static int getDragSplitCost(int targetSlots, int passes, Weights weights)
+    {
+        // Pick up + return the leftovers, and the drag start + slots + end, or just one click for a single slot
+        int perPass = 2 * weights.packet;
+        perPass += targetSlots == 1 ? weights.packet : (targetSlots + 2) * (weights.packet + weights.quickCraft);
+
+        return Math.max(passes, 1) * perPass;
+    }
+
+    public static int getPickupPlaceCost(int targetSlots, Weights weights)
+    {
+        return targetSlots * 2 * weights.packet;
+    }
+
+    public static int getHotbarSwapCost(int targetSlots, Weights weights)
+    {
+        return targetSlots * (weights.packet + weights.swap);
+    }
+
+    /**
+     * Returns the weights for the current server, or the default weights from the configs
+     * if there are none set for this server.
+     */
+    public static Weights getWeights()
+    {
+        String serverName = StringUtils.getWorldOrServerName();
+
+        if (serverName != null)
+        {
+            Weights weights = Configs.CLICK_COST_SERVER_WEIGHTS.get(serverName);
+
+            if (weights != null)
+            {
+                return weights;
+            }
+        }
+
+        return new Weights(Configs.Generic.CLICK_COST_PACKET.getIntegerValue(),
+                           Configs.Generic.CLICK_COST_QUICK_CRAFT.getIntegerValue(),
+                           Configs.Generic.CLICK_COST_SWAP.getIntegerValue());
+    }
+
+    public static class Weights
+    {
+        public final int packet;
+        public final int quickCraft;
+        public final int swap;
+
+        public Weights(int packet, int quickCraft, int swap)
+        {
+            this.packet = packet;
+            this.quickCraft = quickCraft;
+            this.swap = swap;
+        }
+
+        public static Weights fromJson(JsonObject obj)
+        {
+            return new Weights(JsonUtils.getIntegerOrDefault(obj, "packet", Configs.Generic.CLICK_COST_PACKET.getIntegerValue()),
+                               JsonUtils.getIntegerOrDefault(obj, "quick_craft", Configs.Generic.CLICK_COST_QUICK_CRAFT.getIntegerValue()),
+                               JsonUtils.getIntegerOrDefault(obj, "swap", Configs.Generic.CLICK_COST_SWAP.getIntegerValue()));
+        }
+
+        public JsonObject toJson()
+        {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("packet", this.packet);
+            obj.addProperty("quick_craft", this.quickCraft);
+            obj.addProperty("swap", this.swap);
+            return obj;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("{packet: %d, quick_craft: %d, swap: %d}", this.packet, this.quickCraft, this.swap);
+        }
+    }
+}
@@ -10,6 +10,7 @@ public class ClickPacketBuffer
     private static final Queue<Packet<?>> BUFFER = new ArrayDeque<>(2048);
     private static boolean shouldBufferPackets;
     private static boolean hasBufferedPackets;
+    private static long issuedPacketCount;
 
     public static void reset()
     {
@@ -23,6 +24,20 @@ public class ClickPacketBuffer
         return BUFFER.size();
     }
 
+    /**
+     * @return the total number of click and trade selection packets issued so far, either sent
+     * directly or buffered. This is just a running counter for measuring the packet costs.
+     */
+    public static long getIssuedPacketCount()
+    {
+        return issuedPacketCount;
+    }
+
+    public static void countIssuedPacket()
+    {
+        ++issuedPacketCount;
+    }
+
     public static boolean shouldBufferClickPackets()
     {
         return shouldBufferPackets;
@@ -43,6 +58,26 @@ public class ClickPacketBuffer
     {
         BUFFER.offer(packet);
         hasBufferedPackets = true;
+        ++issuedPacketCount;
+    }
+
+    /**
+     * Sends a non-click packet (for example a trade selection), or buffers it behind
+     * the already buffered click packets, if the click packets are currently being buffered
+     */
+    public static void sendOrBufferPacket(Packet<?> packet)
+    {
+        MinecraftClient mc = MinecraftClient.getInstance();
+
+        if (shouldBufferPackets)
+        {
+            bufferPacket(packet);
+        }
+        else if (mc.getNetworkHandler() != null)
+        {
+            mc.getNetworkHandler().sendPacket(packet);
+            ++issuedPacketCount;
+        }
     }
 
     public static void sendBufferedPackets(int maxCount)
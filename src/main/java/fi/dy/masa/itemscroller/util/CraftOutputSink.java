@@ -0,0 +1,402 @@
+package fi.dy.masa.itemscroller.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.inventory.CraftingResultInventory;
+import net.minecraft.inventory.RecipeInputInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import fi.dy.masa.malilib.gui.Message;
+import fi.dy.masa.malilib.util.InfoUtils;
+import fi.dy.masa.itemscroller.ItemScroller;
+import fi.dy.masa.itemscroller.config.Configs;
+import fi.dy.masa.itemscroller.recipes.RecipePattern;
+import fi.dy.masa.itemscroller.recipes.RecipePlan;
+
+/**
+ * Where the mass craft loop puts the crafted items, see {@link CraftOutputSinkType}.
+ * The click budget of one full grid's worth of crafts is computed once per sink,
+ * and it sizes the pipelined planning passes. The target slots and their free space
+ * are planned by {@link #planTargets(HandledScreen)}, and then only tracked locally
+ * as the crafts are moved, so the output handling doesn't need to re-scan the inventory,
+ * and can be queued right behind the refill clicks. Each target slot is still checked
+ * right before it's clicked, and the targets are only planned again if they have changed.
+ * When the target is the whole main inventory, which is where the vanilla shift-click of the
+ * output slot moves the items anyway, the output is just shift-clicked out with one click.
+ */
+public class CraftOutputSink
+{
+    private static final int[] MAIN_INVENTORY = new int[] { 9, 35 };
+    private static final int[] SHIFT_CLICK_TARGET = new int[] { 0, 35 };
+    private static int lastFallbackSyncId = -1;
+
+    private final CraftOutputSinkType configuredType;
+    private final RecipePattern recipe;
+    private final ItemType resultKey;
+    private final boolean carpetDrop;
+    private final int resultCount;
+    private final int craftsPerLoad;
+    private final int craftsPerFullGrid;
+    private final IntArrayList targetSlots = new IntArrayList();
+    private final IntArrayList targetCapacity = new IntArrayList();
+    private CraftOutputSinkType type;
+    private boolean shiftClick;
+    private int nextTarget;
+    private int totalCapacity;
+
+    private CraftOutputSink(CraftOutputSinkType type, RecipePattern recipe)
+    {
+        this.configuredType = type;
+        this.type = type;
+        this.recipe = recipe;
+        this.shiftClick = type == CraftOutputSinkType.REGION && isWholeMainInventory(getRegion());
+        this.resultKey = recipe.getPlan().getResultKey();
+        this.carpetDrop = Configs.Generic.CARPET_CTRL_Q_CRAFTING.getBooleanValue();
+        this.resultCount = Math.max(1, recipe.getResult().getCount());
+        this.craftsPerLoad = Math.max(1, this.resultKey.getStack().getMaxCount() / this.resultCount);
+        this.craftsPerFullGrid = getCraftsPerFullGrid(recipe.getPlan());
+    }
+
+    /**
+     * Creates the sink for the configured sink type. The target slots are not planned yet,
+     * see {@link #planTargets(HandledScreen)}.
+     */
+    public static CraftOutputSink create(RecipePattern recipe)
+    {
+        CraftOutputSinkType type = (CraftOutputSinkType) Configs.Generic.MASS_CRAFT_OUTPUT_SINK.getOptionListValue();
+        return new CraftOutputSink(type, recipe);
+    }
+
+    /**
+     * Plans the target slots and their free space from the current contents of the screen.
+     * If the Container sink is used in a screen that has no other inventory than the
+     * player inventory and the crafting grid, then this falls back to the main player inventory.
+     * If the target region covers the whole main inventory, then the output will be shift-clicked
+     * out, and the capacity is planned over the whole shift-click target, ie. also the hotbar.
+     */
+    public void planTargets(HandledScreen<? extends ScreenHandler> gui)
+    {
+        this.targetSlots.clear();
+        this.targetCapacity.clear();
+        this.nextTarget = 0;
+        this.totalCapacity = 0;
+        this.type = this.configuredType;
+        this.shiftClick = false;
+
+        if (this.type == CraftOutputSinkType.DROP)
+        {
+            return;
+        }
+
+        ScreenHandler handler = gui.getScreenHandler();
+
+        int[] region = this.type == CraftOutputSinkType.REGION ? getRegion() : MAIN_INVENTORY;
+
+        if (this.type == CraftOutputSinkType.CONTAINER && hasContainerSlots(handler) == false)
+        {
+            this.type = CraftOutputSinkType.REGION;
+
+            if (handler.syncId != lastFallbackSyncId)
+            {
+                lastFallbackSyncId = handler.syncId;
+                InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.craft_output_sink.no_container");
+            }
+        }
+
+        if (this.type == CraftOutputSinkType.REGION && isWholeMainInventory(region))
+        {
+            this.shiftClick = true;
+            region = SHIFT_CLICK_TARGET;
+        }
+
+        for (Slot slot : handler.slots)
+        {
+            if (this.isTargetSlot(slot, region))
+            {
+                this.addTargetSlot(slot);
+            }
+        }
+
+        if (Configs.Generic.CLICK_COST_LOGGING.getBooleanValue())
+        {
+            ItemScroller.logger.info("Craft output sink: {}{}, {} target slots, capacity {} items, {} clicks per full grid",
+                                     this.type, this.shiftClick ? " (shift-click)" : "", this.targetSlots.size(),
+                                     this.totalCapacity, this.getIterationClickBudget());
+        }
+    }
+
+    private static boolean isWholeMainInventory(int[] region)
+    {
+        return region[0] <= MAIN_INVENTORY[0] && region[1] >= MAIN_INVENTORY[1];
+    }
+
+    private static boolean hasContainerSlots(ScreenHandler handler)
+    {
+        for (Slot slot : handler.slots)
+        {
+            if (isContainerSlot(slot))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isContainerSlot(Slot slot)
+    {
+        return (slot.inventory instanceof PlayerInventory) == false &&
+               (slot.inventory instanceof RecipeInputInventory) == false &&
+               (slot.inventory instanceof CraftingResultInventory) == false;
+    }
+
+    private boolean isTargetSlot(Slot slot, int[] region)
+    {
+        if (this.type == CraftOutputSinkType.CONTAINER)
+        {
+            return isContainerSlot(slot);
+        }
+
+        int index = AccessorUtils.getSlotIndex(slot);
+        return slot.inventory instanceof PlayerInventory && index >= region[0] && index <= region[1];
+    }
+
+    private void addTargetSlot(Slot slot)
+    {
+        int capacity = this.getFreeSpace(slot);
+
+        if (capacity > 0)
+        {
+            this.targetSlots.add(slot.id);
+            this.targetCapacity.add(capacity);
+            this.totalCapacity += capacity;
+        }
+    }
+
+    /**
+     * @return how many of the result items fit into the slot in its current state
+     */
+    private int getFreeSpace(Slot slot)
+    {
+        ItemStack result = this.resultKey.getStack();
+
+        if (slot.canInsert(result) == false)
+        {
+            return 0;
+        }
+
+        ItemStack stack = slot.getStack();
+        int max = slot.getMaxItemCount(result);
+
+        if (stack.isEmpty())
+        {
+            return max;
+        }
+        else if (InventoryUtils.areStacksEqual(stack, result))
+        {
+            return Math.max(0, max - stack.getCount());
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return how many crafts a grid filled with full stacks holds
+     */
+    private static int getCraftsPerFullGrid(RecipePlan plan)
+    {
+        int crafts = Integer.MAX_VALUE;
+
+        for (RecipePlan.IngredientEntry entry : plan.getIngredients())
+        {
+            crafts = Math.min(crafts, entry.getType().getStack().getMaxCount());
+        }
+
+        return crafts != Integer.MAX_VALUE ? crafts : 1;
+    }
+
+    /**
+     * Returns the player inventory index range for the REGION sink, from the
+     * 'massCraftOutputRegion' config in the format "first-last".
+     */
+    private static int[] getRegion()
+    {
+        String str = Configs.Generic.MASS_CRAFT_OUTPUT_REGION.getStringValue();
+        String[] parts = str.split("-");
+
+        try
+        {
+            if (parts.length == 2)
+            {
+                int first = Integer.parseInt(parts[0].trim());
+                int last = Integer.parseInt(parts[1].trim());
+                return new int[] { Math.min(first, last), Math.max(first, last) };
+            }
+        }
+        catch (NumberFormatException ignore) {}
+
+        return MAIN_INVENTORY;
+    }
+
+    /**
+     * @return how many crafts' worth of items the sink can still take
+     */
+    public int getRemainingCrafts()
+    {
+        if (this.type == CraftOutputSinkType.DROP)
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        return this.totalCapacity / this.resultCount;
+    }
+
+    /**
+     * @return the number of clicks that moving one full grid's worth of crafts costs
+     */
+    public int getIterationClickBudget()
+    {
+        return this.getClickBudget(this.craftsPerFullGrid);
+    }
+
+    /**
+     * @return the number of clicks that moving <b>crafts</b> crafts out of the output slot costs:
+     * the drop clicks, the one shift-click, or the cursor pick-ups from the output slot plus the placing clicks
+     */
+    public int getClickBudget(int crafts)
+    {
+        if (this.type == CraftOutputSinkType.DROP)
+        {
+            return this.carpetDrop ? 1 : crafts;
+        }
+
+        if (this.shiftClick)
+        {
+            return 1;
+        }
+
+        int loads = (crafts + this.craftsPerLoad - 1) / this.craftsPerLoad;
+
+        // Each cursor load may be split over two partially filled target slots
+        return crafts + 2 * loads;
+    }
+
+    /**
+     * Moves up to <b>crafts</b> crafts out of the given crafting output slot.
+     * When shift-clicking, <b>crafts</b> must be all the crafts in the grid.
+     * @return the number of crafts actually moved, less than requested if the sink is full
+     */
+    public int extract(HandledScreen<? extends ScreenHandler> gui, Slot outputSlot, int crafts)
+    {
+        if (this.type == CraftOutputSinkType.DROP)
+        {
+            if (this.carpetDrop)
+            {
+                InventoryUtils.dropStack(gui, outputSlot.id);
+            }
+            else
+            {
+                for (int i = 0; i < crafts; ++i)
+                {
+                    InventoryUtils.dropStack(gui, outputSlot.id);
+                }
+            }
+
+            return crafts;
+        }
+
+        if (this.shiftClick)
+        {
+            int gridCrafts = InventoryUtils.getCraftCountInGrid(this.recipe, gui, outputSlot);
+
+            InventoryUtils.shiftClickSlot(gui, outputSlot.id);
+
+            int done = gridCrafts - InventoryUtils.getCraftCountInGrid(this.recipe, gui, outputSlot);
+            this.totalCapacity = Math.max(0, this.totalCapacity - done * this.resultCount);
+
+            return done;
+        }
+
+        int done = 0;
+
+        while (done < crafts)
+        {
+            int load = Math.min(Math.min(crafts - done, this.craftsPerLoad), this.getRemainingCrafts());
+
+            if (load <= 0)
+            {
+                break;
+            }
+
+            for (int i = 0; i < load; ++i)
+            {
+                InventoryUtils.leftClickSlot(gui, outputSlot.id);
+            }
+
+            int items = load * this.resultCount;
+
+            boolean replanned = false;
+
+            while (items > 0)
+            {
+                if (this.nextTarget >= this.targetSlots.size())
+                {
+                    // The planned targets ran out before the cursor was emptied, so they were
+                    // changed by something else, plan them again once from the current state
+                    if (replanned)
+                    {
+                        break;
+                    }
+
+                    this.planTargets(gui);
+                    replanned = true;
+                    continue;
+                }
+
+                int capacity = this.targetCapacity.getInt(this.nextTarget);
+                int slotNum = this.targetSlots.getInt(this.nextTarget);
+                int free = this.getFreeSpace(gui.getScreenHandler().getSlot(slotNum));
+
+                // The slot was filled by something else since the planning, clicking it could swap the cursor stack
+                if (free <= 0)
+                {
+                    this.totalCapacity -= capacity;
+                    this.targetCapacity.set(this.nextTarget, 0);
+                    ++this.nextTarget;
+                    continue;
+                }
+
+                if (free < capacity)
+                {
+                    this.totalCapacity -= capacity - free;
+                    capacity = free;
+                }
+
+                int placed = Math.min(capacity, items);
+
+                InventoryUtils.leftClickSlot(gui, slotNum);
+
+                items -= placed;
+                this.totalCapacity -= placed;
+                this.targetCapacity.set(this.nextTarget, capacity - placed);
+
+                if (capacity - placed <= 0)
+                {
+                    ++this.nextTarget;
+                }
+            }
+
+            done += load;
+
+            // The planned and the actual state have diverged, don't keep going blind
+            if (gui.getScreenHandler().getCursorStack().isEmpty() == false)
+            {
+                break;
+            }
+        }
+
+        return done;
+    }
+}
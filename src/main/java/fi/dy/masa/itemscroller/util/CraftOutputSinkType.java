@@ -0,0 +1,77 @@
+package fi.dy.masa.itemscroller.util;
+
+import com.google.common.collect.ImmutableList;
+import fi.dy.masa.malilib.config.IConfigOptionListEntry;
+import fi.dy.masa.malilib.util.StringUtils;
+
+public enum CraftOutputSinkType implements IConfigOptionListEntry
+{
+    DROP            ("drop",        "itemscroller.label.craft_output_sink.drop"),
+    CONTAINER       ("container",   "itemscroller.label.craft_output_sink.container"),
+    REGION          ("region",      "itemscroller.label.craft_output_sink.region");
+
+    public static final ImmutableList<CraftOutputSinkType> VALUES = ImmutableList.copyOf(values());
+
+    private final String configString;
+    private final String translationKey;
+
+    CraftOutputSinkType(String configString, String translationKey)
+    {
+        this.configString = configString;
+        this.translationKey = translationKey;
+    }
+
+    @Override
+    public String getStringValue()
+    {
+        return this.configString;
+    }
+
+    @Override
+    public String getDisplayName()
+    {
+        return StringUtils.translate(this.translationKey);
+    }
+
+    @Override
+    public IConfigOptionListEntry cycle(boolean forward)
+    {
+        int id = this.ordinal();
+
+        if (forward)
+        {
+            if (++id >= values().length)
+            {
+                id = 0;
+            }
+        }
+        else
+        {
+            if (--id < 0)
+            {
+                id = values().length - 1;
+            }
+        }
+
+        return values()[id % values().length];
+    }
+
+    @Override
+    public CraftOutputSinkType fromString(String name)
+    {
+        return fromStringStatic(name);
+    }
+
+    public static CraftOutputSinkType fromStringStatic(String name)
+    {
+        for (CraftOutputSinkType val : VALUES)
+        {
+            if (val.configString.equalsIgnoreCase(name))
+            {
+                return val;
+            }
+        }
+
+        return CraftOutputSinkType.DROP;
+    }
+}
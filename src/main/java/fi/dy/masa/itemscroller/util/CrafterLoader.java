@@ -0,0 +1,424 @@
+package fi.dy.masa.itemscroller.util;
+
+import java.util.StringJoiner;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.client.gui.screen.ingame.CrafterScreen;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.CrafterScreenHandler;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import fi.dy.masa.malilib.gui.Message;
+import fi.dy.masa.malilib.util.InfoUtils;
+import fi.dy.masa.itemscroller.recipes.RecipePattern;
+import fi.dy.masa.itemscroller.recipes.RecipePlan;
+
+/**
+ * Loads a number of crafts' worth of a stored recipe into a Crafter's 3x3 grid.
+ * The recipe is placed so that none of its cells land on a disabled Crafter slot,
+ * shifting it inside the grid if its stored position is blocked. Each ingredient
+ * is then drag-split over all of its cells, so that the counts stay balanced between the cells.
+ */
+public class CrafterLoader
+{
+    private static final int GRID_SIZE = 3;
+
+    /**
+     * Loads <b>crafts</b> crafts' worth of the given recipe into the open Crafter's grid,
+     * ie. that many items into every cell used by the recipe, capped to the max stack size.
+     * Wrong items are first moved out of the grid.
+     * @return true if the recipe could be loaded (possibly partially, if ingredients ran out)
+     */
+    public static boolean loadCrafterWithRecipe(RecipePattern recipe, CrafterScreen gui, int crafts)
+    {
+        CrafterScreenHandler handler = gui.getScreenHandler();
+        final int width = getRecipeWidth(recipe);
+
+        if (recipe.isValid() == false || width < 0)
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.crafter.unsupported_recipe");
+            return false;
+        }
+
+        RecipePlan plan = recipe.getPlan();
+        int[] cellSlots = getCrafterSlotsForRecipe(plan, handler, recipe.getRecipeLength(), width);
+
+        if (cellSlots == null)
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.crafter.slot_disabled",
+                                             getBlockingCells(plan, handler, recipe.getRecipeLength(), width));
+            return false;
+        }
+
+        InventoryUtils.tryClearCursor(gui);
+
+        // Move out any items that don't belong to the recipe
+        for (int slotNum = 0; slotNum < GRID_SIZE * GRID_SIZE; ++slotNum)
+        {
+            int cell = indexOf(cellSlots, slotNum);
+            ItemStack stack = handler.getSlot(slotNum).getStack();
+
+            if (InventoryUtils.isStackEmpty(stack) == false && (cell < 0 || recipe.isAcceptedInSlot(cell, stack) == false))
+            {
+                InventoryUtils.shiftClickSlot(gui, slotNum);
+
+                if (handler.getSlot(slotNum).hasStack())
+                {
+                    InventoryUtils.dropStack(gui, slotNum);
+                }
+            }
+        }
+
+        Slot slotGridFirst = handler.getSlot(0);
+
+        for (RecipePlan.IngredientEntry entry : plan.getIngredients())
+        {
+            ItemStack reference = entry.getType().getStack();
+            IntArrayList targetSlots = new IntArrayList(entry.getCountPerCraft());
+
+            for (int cell : entry.getCells())
+            {
+                targetSlots.add(cellSlots[cell]);
+            }
+
+            loadCrafterCells(gui, slotGridFirst, reference, targetSlots, Math.min(crafts, reference.getMaxCount()));
+        }
+
+        InventoryUtils.tryClearCursor(gui);
+
+        return true;
+    }
+
+    /**
+     * @return the width of the stored recipe's grid, or -1 if the recipe doesn't fit the Crafter
+     */
+    private static int getRecipeWidth(RecipePattern recipe)
+    {
+        final int length = recipe.getRecipeLength();
+
+        if (length == 9)
+        {
+            return 3;
+        }
+        else if (length == 4)
+        {
+            return 2;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Maps the recipe grid cells to the Crafter's 3x3 grid slot numbers. The stored position
+     * of the recipe is preferred, but if any of its cells would land on a disabled slot,
+     * then the other positions of the recipe's used area inside the grid are tried.
+     * @return the crafter slot number per recipe cell (-1 for the unused cells),
+     * or null if there is no position without disabled slots
+     */
+    @Nullable
+    private static int[] getCrafterSlotsForRecipe(RecipePlan plan, CrafterScreenHandler handler, int length, int width)
+    {
+        int minRow = GRID_SIZE;
+        int minCol = GRID_SIZE;
+        int maxRow = -1;
+        int maxCol = -1;
+
+        for (int cell = 0; cell < length; ++cell)
+        {
+            if (plan.isCellUsed(cell))
+            {
+                minRow = Math.min(minRow, cell / width);
+                maxRow = Math.max(maxRow, cell / width);
+                minCol = Math.min(minCol, cell % width);
+                maxCol = Math.max(maxCol, cell % width);
+            }
+        }
+
+        if (maxRow < 0)
+        {
+            return null;
+        }
+
+        int[] stored = getCellSlots(plan, length, width, minRow, minCol, minRow, minCol);
+
+        if (isPlacementFree(plan, handler, stored))
+        {
+            return stored;
+        }
+
+        for (int row = 0; row + maxRow - minRow < GRID_SIZE; ++row)
+        {
+            for (int col = 0; col + maxCol - minCol < GRID_SIZE; ++col)
+            {
+                int[] cellSlots = getCellSlots(plan, length, width, minRow, minCol, row, col);
+
+                if (isPlacementFree(plan, handler, cellSlots))
+                {
+                    return cellSlots;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the crafter slot per recipe cell, when the recipe's used area
+     * starting at (minRow, minCol) is moved to start at (row, col) in the Crafter's grid
+     */
+    private static int[] getCellSlots(RecipePlan plan, int length, int width, int minRow, int minCol, int row, int col)
+    {
+        int[] cellSlots = new int[length];
+
+        for (int cell = 0; cell < length; ++cell)
+        {
+            cellSlots[cell] = plan.isCellUsed(cell) ? (cell / width - minRow + row) * GRID_SIZE + (cell % width - minCol + col) : -1;
+        }
+
+        return cellSlots;
+    }
+
+    private static boolean isPlacementFree(RecipePlan plan, CrafterScreenHandler handler, int[] cellSlots)
+    {
+        for (int cell = 0; cell < cellSlots.length; ++cell)
+        {
+            if (plan.isCellUsed(cell) && handler.isSlotDisabled(cellSlots[cell]))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the 1-based Crafter grid cell numbers that block the recipe at its stored position
+     */
+    private static String getBlockingCells(RecipePlan plan, CrafterScreenHandler handler, int length, int width)
+    {
+        StringJoiner joiner = new StringJoiner(", ");
+
+        for (int cell = 0; cell < length; ++cell)
+        {
+            int slotNum = (cell / width) * GRID_SIZE + cell % width;
+
+            if (plan.isCellUsed(cell) && handler.isSlotDisabled(slotNum))
+            {
+                joiner.add(String.valueOf(slotNum + 1));
+            }
+        }
+
+        return joiner.toString();
+    }
+
+    private static int indexOf(int[] arr, int value)
+    {
+        for (int i = 0; i < arr.length; ++i)
+        {
+            if (arr[i] == value)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void loadCrafterCells(HandledScreen<? extends ScreenHandler> gui,
+                                         Slot slotGridFirst,
+                                         ItemStack reference,
+                                         IntArrayList targetSlots,
+                                         int perCell)
+    {
+        ScreenHandler container = gui.getScreenHandler();
+        int failsafe = 64;
+
+        while (--failsafe >= 0)
+        {
+            IntArrayList openSlots = new IntArrayList();
+            int totalNeed = 0;
+
+            for (int slotNum : targetSlots)
+            {
+                int need = getNeed(container.getSlot(slotNum).getStack(), reference, perCell);
+
+                if (need > 0)
+                {
+                    openSlots.add(slotNum);
+                    totalNeed += need;
+                }
+            }
+
+            if (openSlots.isEmpty())
+            {
+                break;
+            }
+
+            // Prefer the largest source stack that doesn't overshoot the total need, so that the whole stack can be drag-split
+            int sourceSlot = -1;
+            int sourceSize = 0;
+            int smallestSlot = -1;
+            int smallestSize = Integer.MAX_VALUE;
+
+            for (Slot slot : container.slots)
+            {
+                if (InventoryUtils.areSlotsInSameInventory(slot, slotGridFirst) == false && slot.hasStack() &&
+                    InventoryUtils.areStacksEqual(reference, slot.getStack()))
+                {
+                    int size = InventoryUtils.getStackSize(slot.getStack());
+
+                    if (size <= totalNeed && size > sourceSize)
+                    {
+                        sourceSlot = slot.id;
+                        sourceSize = size;
+                    }
+
+                    if (size < smallestSize)
+                    {
+                        smallestSlot = slot.id;
+                        smallestSize = size;
+                    }
+                }
+            }
+
+            boolean overshoot = sourceSlot < 0;
+
+            if (overshoot)
+            {
+                sourceSlot = smallestSlot;
+            }
+
+            if (sourceSlot < 0)
+            {
+                break;
+            }
+
+            InventoryUtils.leftClickSlot(gui, sourceSlot);
+            ItemStack stackCursor = container.getCursorStack();
+
+            if (InventoryUtils.areStacksEqual(reference, stackCursor) == false)
+            {
+                break;
+            }
+
+            final int cursorSizeOrig = InventoryUtils.getStackSize(stackCursor);
+
+            if (overshoot == false && cursorSizeOrig >= openSlots.size())
+            {
+                // Only drag over the cells that can take the full equal share, so that no cell gets overfilled
+                IntArrayList dragSlots = getDragSlots(container, openSlots, perCell, cursorSizeOrig);
+
+                if (dragSlots.isEmpty())
+                {
+                    overshoot = true;
+                }
+                else
+                {
+                    InventoryUtils.dragSplitItemsIntoSlots(gui, dragSlots);
+                }
+            }
+            else
+            {
+                overshoot = true;
+            }
+
+            if (overshoot)
+            {
+                // Place the last few items one at a time, always into the cell with the fewest items
+                while (InventoryUtils.isStackEmpty(container.getCursorStack()) == false)
+                {
+                    int target = getSlotWithLargestNeed(container, openSlots, reference, perCell);
+
+                    if (target < 0)
+                    {
+                        break;
+                    }
+
+                    InventoryUtils.rightClickSlot(gui, target);
+                }
+            }
+
+            boolean movedItems = InventoryUtils.getStackSize(container.getCursorStack()) < cursorSizeOrig;
+
+            // Return the leftovers to the source slot
+            if (InventoryUtils.isStackEmpty(container.getCursorStack()) == false)
+            {
+                InventoryUtils.leftClickSlot(gui, sourceSlot);
+            }
+
+            if (movedItems == false)
+            {
+                break;
+            }
+        }
+    }
+
+    private static int getNeed(ItemStack stack, ItemStack reference, int perCell)
+    {
+        if (InventoryUtils.isStackEmpty(stack))
+        {
+            return perCell;
+        }
+
+        return InventoryUtils.areStacksEqual(stack, reference) ? perCell - InventoryUtils.getStackSize(stack) : 0;
+    }
+
+    private static IntArrayList getDragSlots(ScreenHandler container,
+                                             IntArrayList openSlots,
+                                             int perCell,
+                                             int cursorSize)
+    {
+        IntArrayList slots = new IntArrayList(openSlots);
+
+        while (slots.isEmpty() == false)
+        {
+            int share = cursorSize / slots.size();
+            int minNeedIndex = -1;
+            int minNeed = Integer.MAX_VALUE;
+
+            for (int i = 0; i < slots.size(); ++i)
+            {
+                ItemStack stack = container.getSlot(slots.getInt(i)).getStack();
+                int need = perCell - (InventoryUtils.isStackEmpty(stack) ? 0 : InventoryUtils.getStackSize(stack));
+
+                if (need < minNeed)
+                {
+                    minNeed = need;
+                    minNeedIndex = i;
+                }
+            }
+
+            if (share <= minNeed)
+            {
+                break;
+            }
+
+            slots.removeInt(minNeedIndex);
+        }
+
+        return slots;
+    }
+
+    private static int getSlotWithLargestNeed(ScreenHandler container,
+                                              IntArrayList openSlots,
+                                              ItemStack reference,
+                                              int perCell)
+    {
+        int best = -1;
+        int bestNeed = 0;
+
+        for (int slotNum : openSlots)
+        {
+            int need = getNeed(container.getSlot(slotNum).getStack(), reference, perCell);
+
+            if (need > bestNeed)
+            {
+                best = slotNum;
+                bestNeed = need;
+            }
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,96 @@
+package fi.dy.masa.itemscroller.util;
+
+import java.lang.ref.WeakReference;
+import javax.annotation.Nullable;
+import net.minecraft.inventory.RecipeInputInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.CraftingRecipe;
+import net.minecraft.recipe.RecipeEntry;
+
+/**
+ * The item layout (item and components per cell, ignoring the counts) of the crafting grid
+ * at the last full recipe match, together with the result of that match.
+ * The crafting result only depends on the layout, so while the layout stays the same
+ * (for example when crafts just decrement the stack sizes in the grid), the cached result
+ * can be re-used without running the recipe matcher again.
+ */
+public class CraftingGridLayout
+{
+    private WeakReference<RecipeInputInventory> inventory = new WeakReference<>(null);
+    private ItemStack[] cells = new ItemStack[0];
+    @Nullable private CraftingRecipe recipe;
+    @Nullable private RecipeEntry<?> recipeEntry;
+    private ItemStack result = ItemStack.EMPTY;
+
+    public void clear()
+    {
+        this.inventory = new WeakReference<>(null);
+        this.cells = new ItemStack[0];
+        this.recipe = null;
+        this.recipeEntry = null;
+        this.result = ItemStack.EMPTY;
+    }
+
+    /**
+     * @return true if the given grid has the same items in the same cells as the stored layout,
+     * regardless of the stack sizes
+     */
+    public boolean isSameLayout(RecipeInputInventory craftMatrix)
+    {
+        final int size = craftMatrix.size();
+
+        if (this.inventory.get() != craftMatrix || this.cells.length != size)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < size; ++i)
+        {
+            ItemStack stack = craftMatrix.getStack(i);
+            ItemStack key = this.cells[i];
+
+            if (stack.isEmpty() != key.isEmpty() ||
+                (stack.isEmpty() == false && ItemStack.areItemsAndComponentsEqual(stack, key) == false))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void store(RecipeInputInventory craftMatrix, @Nullable CraftingRecipe recipe,
+                      @Nullable RecipeEntry<?> recipeEntry, ItemStack result)
+    {
+        final int size = craftMatrix.size();
+
+        this.inventory = new WeakReference<>(craftMatrix);
+        this.cells = new ItemStack[size];
+
+        for (int i = 0; i < size; ++i)
+        {
+            this.cells[i] = craftMatrix.getStack(i).copyWithCount(1);
+        }
+
+        this.recipe = recipe;
+        this.recipeEntry = recipeEntry;
+        this.result = result.copy();
+    }
+
+    @Nullable
+    public CraftingRecipe getRecipe()
+    {
+        return this.recipe;
+    }
+
+    @Nullable
+    public RecipeEntry<?> getRecipeEntry()
+    {
+        return this.recipeEntry;
+    }
+
+    public ItemStack getResult()
+    {
+        return this.result.copy();
+    }
+}
@@ -0,0 +1,282 @@
+package fi.dy.masa.itemscroller.util;
+
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import net.minecraft.block.entity.AbstractFurnaceBlockEntity;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.screen.ingame.AbstractFurnaceScreen;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.inventory.SimpleInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.AbstractCookingRecipe;
+import net.minecraft.recipe.RecipeType;
+import net.minecraft.screen.AbstractFurnaceScreenHandler;
+import net.minecraft.screen.BlastFurnaceScreenHandler;
+import net.minecraft.screen.SmokerScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.world.World;
+import fi.dy.masa.malilib.gui.Message;
+import fi.dy.masa.malilib.util.InfoUtils;
+import fi.dy.masa.itemscroller.mixin.IMixinAbstractFurnaceScreenHandler;
+
+/**
+ * Loads furnaces, smokers and blast furnaces in one planned batch: the finished output
+ * is pulled out first, then the input slot is topped up to a full stack, and then
+ * exactly as much fuel is added as the input items in the furnace need,
+ * based on the recipe's cooking time and the fuel that is still burning.
+ */
+public class FurnaceLoader
+{
+    private static final int SLOT_INPUT = 0;
+    private static final int SLOT_FUEL = 1;
+    private static final int SLOT_OUTPUT = 2;
+
+    @Nullable private static Map<Item, Integer> fuelTimes;
+
+    /**
+     * Loads the furnace with the hovered item from the player inventory,
+     * or with more of the item already in the input slot if no player inventory item is hovered.
+     * @return true if any clicks were made
+     */
+    public static boolean loadFurnace(AbstractFurnaceScreen<?> gui, @Nullable Slot hoveredSlot)
+    {
+        AbstractFurnaceScreenHandler handler = gui.getScreenHandler();
+        boolean clicked = false;
+
+        if (handler.getSlot(SLOT_OUTPUT).hasStack())
+        {
+            // The quick move repeats until the output slot is empty or the inventory is full
+            InventoryUtils.shiftClickSlot(gui, SLOT_OUTPUT);
+            clicked = true;
+        }
+
+        ItemStack inputStack = handler.getSlot(SLOT_INPUT).getStack();
+        ItemStack reference = inputStack;
+
+        if (hoveredSlot != null && hoveredSlot.inventory instanceof PlayerInventory && hoveredSlot.hasStack() &&
+            (inputStack.isEmpty() || InventoryUtils.areStacksEqual(inputStack, hoveredSlot.getStack())))
+        {
+            reference = hoveredSlot.getStack().copy();
+        }
+
+        if (reference.isEmpty())
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.furnace.no_input");
+            return clicked;
+        }
+
+        reference = reference.copy();
+        clicked |= fillSlot(gui, SLOT_INPUT, reference, reference.getMaxCount() - inputStack.getCount());
+
+        ItemStack input = handler.getSlot(SLOT_INPUT).getStack();
+        clicked |= loadFuel(gui, input.getCount(), getCookTime(handler, input));
+
+        return clicked;
+    }
+
+    private static boolean loadFuel(AbstractFurnaceScreen<?> gui, int inputCount, int cookTime)
+    {
+        AbstractFurnaceScreenHandler handler = gui.getScreenHandler();
+        ItemStack fuelStack = handler.getSlot(SLOT_FUEL).getStack();
+        ItemStack fuel = fuelStack.isEmpty() ? getBestFuelInInventory(handler) : fuelStack.copy();
+
+        if (fuel.isEmpty())
+        {
+            InfoUtils.showGuiOrInGameMessage(Message.MessageType.WARNING, "itemscroller.message.furnace.no_fuel");
+            return false;
+        }
+
+        int needed = getFuelItemsNeeded(handler, fuel.getItem(), inputCount, cookTime) - fuelStack.getCount();
+        needed = Math.min(needed, fuel.getMaxCount() - fuelStack.getCount());
+
+        return needed > 0 && fillSlot(gui, SLOT_FUEL, fuel, needed);
+    }
+
+    /**
+     * Moves exactly <b>amount</b> (or as many as there are) items matching <b>reference</b>
+     * from the player inventory into the given furnace slot. Whole source stacks are placed
+     * with one click, and only the last partial amount is placed one item at a time.
+     */
+    private static boolean fillSlot(AbstractFurnaceScreen<?> gui, int slotNum, ItemStack reference, int amount)
+    {
+        AbstractFurnaceScreenHandler handler = gui.getScreenHandler();
+        boolean clicked = false;
+
+        while (amount > 0)
+        {
+            Slot source = getLargestSourceSlot(handler, reference);
+
+            if (source == null)
+            {
+                break;
+            }
+
+            InventoryUtils.leftClickSlot(gui, source.id);
+            clicked = true;
+
+            int cursorCount = handler.getCursorStack().getCount();
+
+            if (cursorCount <= amount)
+            {
+                InventoryUtils.leftClickSlot(gui, slotNum);
+            }
+            else
+            {
+                for (int i = 0; i < amount; ++i)
+                {
+                    InventoryUtils.rightClickSlot(gui, slotNum);
+                }
+            }
+
+            int placed = cursorCount - handler.getCursorStack().getCount();
+
+            if (handler.getCursorStack().isEmpty() == false)
+            {
+                InventoryUtils.leftClickSlot(gui, source.id);
+            }
+
+            if (placed <= 0)
+            {
+                break;
+            }
+
+            amount -= placed;
+        }
+
+        return clicked;
+    }
+
+    @Nullable
+    private static Slot getLargestSourceSlot(AbstractFurnaceScreenHandler handler, ItemStack reference)
+    {
+        Slot best = null;
+
+        for (Slot slot : handler.slots)
+        {
+            if (slot.id > SLOT_OUTPUT && InventoryUtils.areStacksEqual(slot.getStack(), reference) &&
+                (best == null || slot.getStack().getCount() > best.getStack().getCount()))
+            {
+                best = slot;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @return the fuel in the player inventory with the longest burn time per item,
+     * so that the fuel slot needs the fewest items and clicks
+     */
+    private static ItemStack getBestFuelInInventory(AbstractFurnaceScreenHandler handler)
+    {
+        ItemStack best = ItemStack.EMPTY;
+        int bestTime = 0;
+
+        for (Slot slot : handler.slots)
+        {
+            if (slot.id > SLOT_OUTPUT && slot.hasStack())
+            {
+                ItemStack stack = slot.getStack();
+                int time = getFuelTime(stack.getItem());
+
+                // Skip fuels that leave a remainder (lava buckets), those can't be stacked in the fuel slot
+                if (time > bestTime && stack.getItem().hasRecipeRemainder() == false)
+                {
+                    best = stack;
+                    bestTime = time;
+                }
+            }
+        }
+
+        return best.copy();
+    }
+
+    /**
+     * @return the number of fuel items needed to smelt <b>inputCount</b> items, taking into account
+     * the burn time still left in the furnace from the fuel currently burning
+     */
+    public static int getFuelItemsNeeded(AbstractFurnaceScreenHandler handler, Item fuel, int inputCount, int cookTime)
+    {
+        int burnTime = getFuelTime(handler, fuel);
+
+        if (burnTime <= 0)
+        {
+            return 0;
+        }
+
+        int ticksNeeded = inputCount * cookTime - getRemainingBurnTime(handler);
+
+        return ticksNeeded > 0 ? (int) Math.ceil((double) ticksNeeded / burnTime) : 0;
+    }
+
+    /**
+     * @return the cooking time of the furnace's recipe for the given input item,
+     * or the default cooking time of the furnace type, if there is no matching recipe
+     */
+    public static int getCookTime(AbstractFurnaceScreenHandler handler, ItemStack input)
+    {
+        World world = MinecraftClient.getInstance().world;
+
+        if (world != null && input.isEmpty() == false)
+        {
+            RecipeType<? extends AbstractCookingRecipe> type = ((IMixinAbstractFurnaceScreenHandler) handler).itemscroller_getRecipeType();
+            Optional<Integer> cookTime = world.getRecipeManager().getFirstMatch(type, new SimpleInventory(input), world)
+                                              .map(entry -> entry.value().getCookingTime());
+
+            if (cookTime.isPresent())
+            {
+                return cookTime.get();
+            }
+        }
+
+        if (isFastFurnace(handler))
+        {
+            return AbstractFurnaceBlockEntity.DEFAULT_COOK_TIME / 2;
+        }
+
+        return AbstractFurnaceBlockEntity.DEFAULT_COOK_TIME;
+    }
+
+    /**
+     * @return the remaining burn time of the fuel currently burning in the furnace
+     */
+    private static int getRemainingBurnTime(AbstractFurnaceScreenHandler handler)
+    {
+        return handler.isBurning() ? ((IMixinAbstractFurnaceScreenHandler) handler).itemscroller_getPropertyDelegate().get(0) : 0;
+    }
+
+    /**
+     * Blast furnaces and smokers both cook and burn their fuel at twice the normal speed
+     */
+    private static boolean isFastFurnace(AbstractFurnaceScreenHandler handler)
+    {
+        return handler instanceof BlastFurnaceScreenHandler || handler instanceof SmokerScreenHandler;
+    }
+
+    public static void clearFuelTimes()
+    {
+        fuelTimes = null;
+    }
+
+    public static int getFuelTime(Item item)
+    {
+        if (fuelTimes == null)
+        {
+            fuelTimes = AbstractFurnaceBlockEntity.createFuelTimeMap();
+        }
+
+        return fuelTimes.getOrDefault(item, 0);
+    }
+
+    /**
+     * @return the burn time of the given fuel item in the given type of furnace
+     */
+    public static int getFuelTime(AbstractFurnaceScreenHandler handler, Item item)
+    {
+        int burnTime = getFuelTime(item);
+
+        return isFastFurnace(handler) ? burnTime / 2 : burnTime;
+    }
+}
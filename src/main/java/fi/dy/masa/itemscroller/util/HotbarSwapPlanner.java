@@ -0,0 +1,186 @@
+package fi.dy.masa.itemscroller.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.screen.slot.SlotActionType;
+
+/**
+ * Plans filling crafting grid cells with SWAP clicks. The SWAP action only accepts
+ * the hotbar (buttons 0-8) and the offhand (button 40) as the other side, so ingredients
+ * that are only in the main inventory are first staged into a free hotbar slot,
+ * and only re-staged once the staged stack has been swapped into the grid.
+ * The ingredient locations are indexed once, instead of scanning the inventory for every cell.
+ */
+public class HotbarSwapPlanner
+{
+    private static final int OFFHAND_INDEX = 40;
+
+    private final HandledScreen<? extends ScreenHandler> gui;
+    private final PlayerInventory inv;
+    /** Player inventory index -> screen handler slot number */
+    private final Int2IntOpenHashMap inventoryIndexToSlot = new Int2IntOpenHashMap();
+    /** Item -> player inventory indices holding it, in the staged (hotbar/offhand) and main inventory parts */
+    private final Map<ItemType, IntArrayList> stagedSources = new HashMap<>();
+    private final Map<ItemType, IntArrayList> mainSources = new HashMap<>();
+    private final IntArrayList freeStagingSlots = new IntArrayList();
+    private final Map<ItemType, Integer> remainingNeeds;
+
+    public HotbarSwapPlanner(HandledScreen<? extends ScreenHandler> gui, PlayerInventory inv, Map<ItemType, Integer> remainingNeeds)
+    {
+        this.gui = gui;
+        this.inv = inv;
+        this.remainingNeeds = new HashMap<>(remainingNeeds);
+        this.inventoryIndexToSlot.defaultReturnValue(-1);
+
+        for (Slot slot : gui.getScreenHandler().slots)
+        {
+            if (slot.inventory == inv)
+            {
+                this.inventoryIndexToSlot.put(AccessorUtils.getSlotIndex(slot), slot.id);
+            }
+        }
+
+        for (int index = 0; index < inv.main.size(); ++index)
+        {
+            this.indexStack(index, inv.main.get(index));
+        }
+
+        this.indexStack(OFFHAND_INDEX, inv.offHand.get(0));
+    }
+
+    private static boolean isStagingIndex(int index)
+    {
+        return (index >= 0 && index < 9) || index == OFFHAND_INDEX;
+    }
+
+    private void indexStack(int index, ItemStack stack)
+    {
+        if (InventoryUtils.isStackEmpty(stack))
+        {
+            if (isStagingIndex(index))
+            {
+                this.freeStagingSlots.add(index);
+            }
+        }
+        else
+        {
+            Map<ItemType, IntArrayList> map = isStagingIndex(index) ? this.stagedSources : this.mainSources;
+            map.computeIfAbsent(new ItemType(stack), k -> new IntArrayList()).add(index);
+        }
+    }
+
+    private void removeFromIndex(int index, ItemType type)
+    {
+        Map<ItemType, IntArrayList> map = isStagingIndex(index) ? this.stagedSources : this.mainSources;
+        IntArrayList list = map.get(type);
+
+        if (list != null)
+        {
+            list.rem(index);
+        }
+    }
+
+    /**
+     * Swaps a stack of the given ingredient into the given grid slot, staging it into
+     * the hotbar first if needed.
+     * @return true if the ingredient was swapped into the slot
+     */
+    public boolean swapIntoSlot(ItemStack ingredient, int gridSlotNum)
+    {
+        ItemType type = new ItemType(ingredient);
+        int stagedIndex = this.getStagedIndex(type);
+
+        if (stagedIndex < 0)
+        {
+            return false;
+        }
+
+        ItemStack previous = this.gui.getScreenHandler().getSlot(gridSlotNum).getStack().copy();
+
+        InventoryUtils.clickSlot(this.gui, gridSlotNum, stagedIndex, SlotActionType.SWAP);
+
+        // The staged slot now holds whatever was in the grid slot before
+        this.removeFromIndex(stagedIndex, type);
+        this.indexStack(stagedIndex, previous);
+        this.remainingNeeds.computeIfPresent(type, (k, v) -> v - 1);
+
+        return true;
+    }
+
+    private int getStagedIndex(ItemType type)
+    {
+        IntArrayList staged = this.stagedSources.get(type);
+
+        if (staged != null && staged.isEmpty() == false)
+        {
+            return staged.getInt(0);
+        }
+
+        IntArrayList sources = this.mainSources.get(type);
+
+        if (sources == null || sources.isEmpty())
+        {
+            return -1;
+        }
+
+        int stagingIndex = this.getStagingSlot();
+        int sourceIndex = sources.getInt(0);
+        int sourceSlotNum = this.inventoryIndexToSlot.get(sourceIndex);
+
+        if (stagingIndex < 0 || sourceSlotNum < 0)
+        {
+            return -1;
+        }
+
+        ItemStack displaced = this.inv.getStack(stagingIndex).copy();
+
+        // Swap the main inventory stack into the staging slot, the staging slot's previous contents go to the main inventory slot
+        InventoryUtils.clickSlot(this.gui, sourceSlotNum, stagingIndex, SlotActionType.SWAP);
+
+        this.removeFromIndex(sourceIndex, type);
+        this.freeStagingSlots.rem(stagingIndex);
+
+        if (InventoryUtils.isStackEmpty(displaced) == false)
+        {
+            ItemType displacedType = new ItemType(displaced);
+            this.removeFromIndex(stagingIndex, displacedType);
+            this.mainSources.computeIfAbsent(displacedType, k -> new IntArrayList()).add(sourceIndex);
+        }
+
+        this.stagedSources.computeIfAbsent(type, k -> new IntArrayList()).add(stagingIndex);
+
+        return stagingIndex;
+    }
+
+    /**
+     * Returns a staging slot: an empty hotbar or offhand slot, or a hotbar slot holding
+     * something that is not needed by the remaining grid cells
+     */
+    private int getStagingSlot()
+    {
+        if (this.freeStagingSlots.isEmpty() == false)
+        {
+            return this.freeStagingSlots.getInt(0);
+        }
+
+        for (int index = 0; index < 9; ++index)
+        {
+            ItemStack stack = this.inv.getStack(index);
+            Integer need = this.remainingNeeds.get(new ItemType(stack));
+
+            if (need == null || need <= 0)
+            {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,155 @@
+package fi.dy.masa.itemscroller.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import fi.dy.masa.itemscroller.recipes.RecipePattern;
+import fi.dy.masa.itemscroller.recipes.RecipePlan;
+
+/**
+ * Keeps an item count index of the player inventory up to date incrementally, and caches
+ * the craftable counts of the stored recipes against it. Only the inventory slots that changed
+ * since the last update are re-counted, and only the cached counts of the recipes
+ * using the changed items are dropped.
+ */
+public class InventoryCountTracker
+{
+    private static final InventoryCountTracker INSTANCE = new InventoryCountTracker();
+
+    private final ItemCountIndex counts = new ItemCountIndex();
+    private final Int2ObjectOpenHashMap<CachedCount> craftableCounts = new Int2ObjectOpenHashMap<>();
+    private ItemStack[] snapshot = new ItemStack[0];
+    private PlayerInventory inventory;
+    private int lastChangeCount = -1;
+
+    public static InventoryCountTracker getInstance()
+    {
+        return INSTANCE;
+    }
+
+    public void reset()
+    {
+        this.counts.clear();
+        this.craftableCounts.clear();
+        this.snapshot = new ItemStack[0];
+        this.inventory = null;
+        this.lastChangeCount = -1;
+    }
+
+    /**
+     * Updates the counts from the inventory slots that have changed since the last call.
+     * Does nothing if the inventory's change counter hasn't changed.
+     */
+    public void update(PlayerInventory inventory)
+    {
+        if (inventory != this.inventory || this.snapshot.length != inventory.main.size())
+        {
+            this.reset();
+            this.inventory = inventory;
+            this.snapshot = new ItemStack[inventory.main.size()];
+            Arrays.fill(this.snapshot, ItemStack.EMPTY);
+        }
+        else if (inventory.getChangeCount() == this.lastChangeCount)
+        {
+            return;
+        }
+
+        this.lastChangeCount = inventory.getChangeCount();
+        Set<ItemType> changedTypes = new HashSet<>();
+
+        for (int i = 0; i < this.snapshot.length; ++i)
+        {
+            ItemStack previous = this.snapshot[i];
+            ItemStack current = inventory.main.get(i);
+
+            if (ItemStack.areEqual(previous, current) == false)
+            {
+                this.counts.add(previous, -previous.getCount());
+                this.counts.add(current, current.getCount());
+                this.snapshot[i] = current.copy();
+
+                if (previous.isEmpty() == false)
+                {
+                    changedTypes.add(new ItemType(previous));
+                }
+
+                if (current.isEmpty() == false)
+                {
+                    changedTypes.add(new ItemType(current));
+                }
+            }
+        }
+
+        if (changedTypes.isEmpty() == false)
+        {
+            this.craftableCounts.values().removeIf(cached -> cached.usesAnyOf(changedTypes));
+        }
+    }
+
+    /**
+     * @return how many times the given stored recipe could be crafted using the items
+     * in the player inventory, as of the last {@link #update(PlayerInventory)}
+     */
+    public int getCraftableCount(int recipeId, RecipePattern recipe)
+    {
+        if (recipe.isValid() == false)
+        {
+            return 0;
+        }
+
+        RecipePlan plan = recipe.getPlan();
+        CachedCount cached = this.craftableCounts.get(recipeId);
+
+        // The recipe plan gets re-created whenever the stored recipe changes
+        if (cached == null || cached.plan != plan || cached.acceptors != recipe.hasIngredientAcceptors())
+        {
+            cached = new CachedCount(recipe, plan, this.counts.getCraftableCount(recipe));
+            this.craftableCounts.put(recipeId, cached);
+        }
+
+        return cached.count;
+    }
+
+    private static class CachedCount
+    {
+        private final RecipePattern recipe;
+        private final RecipePlan plan;
+        private final boolean acceptors;
+        private final int count;
+
+        private CachedCount(RecipePattern recipe, RecipePlan plan, int count)
+        {
+            this.recipe = recipe;
+            this.plan = plan;
+            this.acceptors = recipe.hasIngredientAcceptors();
+            this.count = count;
+        }
+
+        private boolean usesAnyOf(Set<ItemType> types)
+        {
+            for (RecipePlan.IngredientEntry entry : this.plan.getIngredients())
+            {
+                if (types.contains(entry.getType()))
+                {
+                    return true;
+                }
+
+                if (this.acceptors)
+                {
+                    for (ItemType type : types)
+                    {
+                        if (this.recipe.isAcceptedInSlot(entry.getFirstCell(), type.getStack()))
+                        {
+                            return true;
+                        }
+                    }
+                }
+            }
+
+            return false;
+        }
+    }
+}
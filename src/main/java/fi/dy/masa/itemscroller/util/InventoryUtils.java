@@ -5,6 +5,7 @@ import java.lang.ref.WeakReference;
 import java.util.*;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.ints.IntList;
 
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.screen.Screen;
@@ -43,14 +44,21 @@ import fi.dy.masa.itemscroller.mixin.IMixinCraftingResultSlot;
 import fi.dy.masa.itemscroller.recipes.CraftingHandler;
 import fi.dy.masa.itemscroller.recipes.CraftingHandler.SlotRange;
 import fi.dy.masa.itemscroller.recipes.RecipePattern;
+import fi.dy.masa.itemscroller.recipes.RecipePlan;
 import fi.dy.masa.itemscroller.recipes.RecipeStorage;
+import fi.dy.masa.itemscroller.villager.IMerchantScreenHandler;
 import fi.dy.masa.itemscroller.villager.VillagerDataStorage;
+import fi.dy.masa.itemscroller.villager.TradeMetrics;
+import fi.dy.masa.itemscroller.villager.TradePlanner;
 import fi.dy.masa.itemscroller.villager.VillagerUtils;
+import fi.dy.masa.malilib.gui.Message;
 import fi.dy.masa.malilib.util.GuiUtils;
+import fi.dy.masa.malilib.util.InfoUtils;
 
 public class InventoryUtils
 {
     private static final Set<Integer> DRAGGED_SLOTS = new HashSet<>();
+    private static final CraftingGridLayout LAST_GRID_LAYOUT = new CraftingGridLayout();
 
     private static WeakReference<Slot> sourceSlotCandidate = null;
     private static WeakReference<Slot> sourceSlot = null;
@@ -61,12 +69,62 @@ public class InventoryUtils
     private static int lastPosY;
     private static int slotNumberLast;
     private static boolean inhibitCraftResultUpdate;
+    @Nullable private static RecipePattern predictedRecipe;
+    @Nullable private static RecipePlan predictedPlan;
+    @Nullable private static RecipeEntry<?> predictedRecipeEntry;
+    private static boolean predictedRecipeVerified;
+    private static int predictedUpdateCount;
 
     public static void setInhibitCraftingOutputUpdate(boolean inhibitUpdate)
     {
         inhibitCraftResultUpdate = inhibitUpdate;
     }
 
+    /**
+     * Sets the recipe whose result is predicted for the crafting output slot, whenever the grid
+     * holds exactly the items of that recipe. The first such update is always fully matched
+     * to verify the prediction, after that only every Nth update is sampled.
+     * The verification state is kept over several passes, as long as the same unchanged recipe is predicted.
+     * Call this with null after the planned fills are done.
+     */
+    public static void setPredictedCraftingRecipe(@Nullable RecipePattern recipe)
+    {
+        if (Configs.Generic.MASS_CRAFT_PREDICT_OUTPUT.getBooleanValue() == false ||
+            recipe == null || recipe.isValid() == false)
+        {
+            recipe = null;
+        }
+
+        // The plan is rebuilt whenever the recipe changes, so it identifies the verified recipe contents
+        if (recipe != null && recipe.getPlan() != predictedPlan)
+        {
+            resetPredictionVerification();
+            predictedPlan = recipe.getPlan();
+        }
+
+        predictedRecipe = recipe;
+    }
+
+    private static void resetPredictionVerification()
+    {
+        predictedPlan = null;
+        predictedRecipeEntry = null;
+        predictedRecipeVerified = false;
+        predictedUpdateCount = 0;
+    }
+
+    /**
+     * Clears the last matched recipe and the cached grid layout result.
+     * These need to be cleared whenever the recipes or the recipe book can change,
+     * ie. on world changes and on the recipe and recipe book syncs from the server.
+     */
+    public static void clearCraftingRecipeCache()
+    {
+        LAST_GRID_LAYOUT.clear();
+        lastRecipe = null;
+        resetPredictionVerification();
+    }
+
     public static void onSlotChangedCraftingGrid(PlayerEntity player,
                                                  RecipeInputInventory craftMatrix,
                                                  CraftingResultInventory inventoryCraftResult)
@@ -104,38 +162,128 @@ public class InventoryUtils
 
         if ((world instanceof ClientWorld) && player instanceof ClientPlayerEntity)
         {
+            RecipePattern predicted = predictedRecipe;
+            boolean verifyPrediction = false;
+
+            if (predicted != null && doesGridHoldExactRecipe(craftMatrix, predicted))
+            {
+                int interval = Configs.Generic.MASS_CRAFT_PREDICT_VERIFY_INTERVAL.getIntegerValue();
+
+                if (predictedRecipeVerified && (++predictedUpdateCount % interval) != 0)
+                {
+                    if (predictedRecipeEntry != null)
+                    {
+                        inventoryCraftResult.setLastRecipe(predictedRecipeEntry);
+                    }
+
+                    inventoryCraftResult.setStack(0, predicted.getResult().copy());
+                    return;
+                }
+
+                verifyPrediction = true;
+            }
+
             ItemStack stack = ItemStack.EMPTY;
-            CraftingRecipe recipe = Configs.Generic.USE_RECIPE_CACHING.getBooleanValue() ? lastRecipe : null;
+            final boolean useCaching = Configs.Generic.USE_RECIPE_CACHING.getBooleanValue();
+            CraftingRecipe recipe = useCaching ? lastRecipe : null;
             RecipeEntry<?> recipeEntry = null;
 
-            if (recipe == null || recipe.matches(craftMatrix, world) == false)
+            // Only the stack sizes have changed since the last full match, so the result can't have changed.
+            // A prediction verification always does a full match, to catch any drift in the recipe result.
+            if (useCaching && verifyPrediction == false && LAST_GRID_LAYOUT.isSameLayout(craftMatrix))
             {
-                Optional<RecipeEntry<CraftingRecipe>> optional = world.getRecipeManager().getFirstMatch(RecipeType.CRAFTING, craftMatrix, world);
-                recipe = optional.map(RecipeEntry::value).orElse(null);
-                recipeEntry = optional.orElse(null);
-            }
+                recipe = LAST_GRID_LAYOUT.getRecipe();
+                recipeEntry = LAST_GRID_LAYOUT.getRecipeEntry();
+                stack = LAST_GRID_LAYOUT.getResult();
+
+                if (recipe != null)
+                {
+                    if (recipeEntry != null)
+                    {
+                        inventoryCraftResult.setLastRecipe(recipeEntry);
+                    }
 
-            if (recipe != null)
+                    if (setEmptyStack || stack.isEmpty() == false)
+                    {
+                        inventoryCraftResult.setStack(0, stack);
+                    }
+                }
+            }
+            else
             {
-                if ((recipe.isIgnoredInRecipeBook() ||
-                     world.getGameRules().getBoolean(GameRules.DO_LIMITED_CRAFTING) == false ||
-                     ((ClientPlayerEntity) player).getRecipeBook().contains(recipeEntry)))
+                if (recipe == null || verifyPrediction || recipe.matches(craftMatrix, world) == false)
                 {
-                    inventoryCraftResult.setLastRecipe(recipeEntry);
-                    stack = recipe.craft(craftMatrix, world.getRegistryManager());
+                    Optional<RecipeEntry<CraftingRecipe>> optional = world.getRecipeManager().getFirstMatch(RecipeType.CRAFTING, craftMatrix, world);
+                    recipe = optional.map(RecipeEntry::value).orElse(null);
+                    recipeEntry = optional.orElse(null);
                 }
 
-                if (setEmptyStack || stack.isEmpty() == false)
+                RecipeEntry<?> allowedEntry = null;
+
+                if (recipe != null)
                 {
-                    inventoryCraftResult.setStack(0, stack);
+                    if ((recipe.isIgnoredInRecipeBook() ||
+                         world.getGameRules().getBoolean(GameRules.DO_LIMITED_CRAFTING) == false ||
+                         ((ClientPlayerEntity) player).getRecipeBook().contains(recipeEntry)))
+                    {
+                        inventoryCraftResult.setLastRecipe(recipeEntry);
+                        stack = recipe.craft(craftMatrix, world.getRegistryManager());
+                        allowedEntry = recipeEntry;
+                    }
+
+                    if (setEmptyStack || stack.isEmpty() == false)
+                    {
+                        inventoryCraftResult.setStack(0, stack);
+                    }
                 }
 
+                if (useCaching)
+                {
+                    LAST_GRID_LAYOUT.store(craftMatrix, recipe, allowedEntry, stack);
+                }
+
+                if (verifyPrediction)
+                {
+                    predictedRecipeEntry = allowedEntry;
+                }
             }
 
             lastRecipe = recipe;
+
+            if (verifyPrediction)
+            {
+                predictedRecipeVerified = ItemStack.areEqual(stack, predicted.getResult());
+
+                // The stored recipe no longer produces the stored result, stop predicting it
+                if (predictedRecipeVerified == false)
+                {
+                    predictedRecipe = null;
+                }
+            }
         }
     }
 
+    private static boolean doesGridHoldExactRecipe(RecipeInputInventory craftMatrix, RecipePattern recipe)
+    {
+        ItemStack[] recipeItems = recipe.getRecipeItems();
+        final int size = craftMatrix.size();
+
+        if (size != recipeItems.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < size; ++i)
+        {
+            if (areStacksEqual(craftMatrix.getStack(i), recipeItems[i]) == false)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public static String getStackString(ItemStack stack)
     {
         if (isStackEmpty(stack) == false)
@@ -752,37 +900,142 @@ public class InventoryUtils
         }
     }
 
+    /**
+     * Trades the given trade as many times as possible. The possible trade count is planned
+     * up front, see {@link #villagerDoTrades(MerchantScreen, int, int, boolean)}.
+     */
     public static void villagerTradeEverythingPossibleWithTrade(int visibleIndex)
     {
         if (GuiUtils.getCurrentScreen() instanceof MerchantScreen merchantGui)
         {
             MerchantScreenHandler handler = merchantGui.getScreenHandler();
-            Slot slot = handler.getSlot(2);
-            ItemStack sellItem = handler.getRecipes().get(visibleIndex).getSellItem().copy();
+            PlayerInventory inv = MinecraftClient.getInstance().player.getInventory();
 
-            while (true)
+            if (visibleIndex >= 0 && visibleIndex < handler.getRecipes().size())
             {
-                VillagerUtils.switchToTradeByVisibleIndex(visibleIndex);
-                //tryMoveItemsToMerchantBuySlots(merchantGui, true);
+                TradeOffer offer = handler.getRecipes().get(visibleIndex);
+                ItemCountIndex budget = TradePlanner.getBuyItemBudget(handler, inv);
+                int trades = TradePlanner.getPossibleTradeCount(offer, budget, inv);
 
-                // Not a valid recipe
-                //if (slot.hasStack() == false)
-                if (areStacksEqual(sellItem, slot.getStack()) == false)
+                // Out of stock or not affordable, don't send anything
+                if (trades > 0)
                 {
-                    break;
+                    villagerDoTrades(merchantGui, visibleIndex, trades, false);
+                    villagerClearTradeInputSlots();
+                    VillagerDataStorage.getInstance().updateOfferSnapshot(((IMerchantScreenHandler) handler).getOriginalList());
                 }
+            }
+        }
+    }
 
-                shiftClickSlot(merchantGui, slot.id);
+    /**
+     * Does the given trade <b>trades</b> times, or until it fails. Each refill + extract cycle is
+     * one trade selection, which moves any leftovers out of the buy slots and auto-fills them,
+     * and one shift-click on the output, which trades until the buy slots run out.
+     * The selection is skipped if the buy slots already hold enough items for the cycle's trades.
+     * Only the needed number of cycles is done, there is no extra selection to find out that
+     * the trade can't be done anymore.
+     * @param exact if true, then a partial last cycle takes out only the remaining trades one at a time,
+     * instead of trading all the auto-filled buy items
+     * @return the number of trades done
+     */
+    public static int villagerDoTrades(MerchantScreen gui, int visibleIndex, int trades, boolean exact)
+    {
+        MerchantScreenHandler handler = gui.getScreenHandler();
+        Slot outputSlot = handler.getSlot(2);
+        TradeOffer offer = handler.getRecipes().get(visibleIndex);
+        ItemStack sellItem = offer.getSellItem().copy();
+        final int tradesPerFill = TradePlanner.getTradesPerFill(offer);
+        final int cycles = (trades + tradesPerFill - 1) / tradesPerFill;
+        final int usesBefore = offer.getUses();
+        TradeMetrics metrics = TradeMetrics.getInstance();
 
-                // No room in player inventory
-                if (slot.hasStack())
-                {
-                    break;
-                }
+        metrics.startRun(VillagerDataStorage.getInstance().getLastInteractedUUID());
+
+        for (int i = 0; i < cycles; ++i)
+        {
+            int remaining = trades - (offer.getUses() - usesBefore);
+            boolean filled = areStacksEqual(sellItem, outputSlot.getStack()) &&
+                             villagerGetTradesInBuySlots(handler, offer) >= Math.min(remaining, tradesPerFill);
+
+            // Not a valid trade with the items that were auto-filled
+            if (filled == false &&
+                (VillagerUtils.switchToTradeByVisibleIndex(visibleIndex) == false ||
+                 areStacksEqual(sellItem, outputSlot.getStack()) == false))
+            {
+                metrics.onFailedAttempt();
+                break;
+            }
+
+            if (exact && remaining < tradesPerFill)
+            {
+                villagerTakeSingleTrades(gui, outputSlot, sellItem, remaining);
+                break;
+            }
+
+            shiftClickSlot(gui, outputSlot.id);
+
+            // No room in player inventory
+            if (outputSlot.hasStack())
+            {
+                metrics.onFailedAttempt();
+                break;
+            }
+        }
+
+        metrics.endRun(offer.getUses() - usesBefore);
+
+        return offer.getUses() - usesBefore;
+    }
+
+    /**
+     * @return how many times the given trade can be done with the items currently in the buy slots
+     */
+    private static int villagerGetTradesInBuySlots(MerchantScreenHandler handler, TradeOffer offer)
+    {
+        ItemStack buy1 = offer.getDisplayedFirstBuyItem();
+        ItemStack buy2 = offer.getDisplayedSecondBuyItem();
+        int count = villagerGetTradesInSlot(handler.getSlot(0).getStack(), buy1);
+
+        if (buy2.isEmpty() == false)
+        {
+            count = Math.min(count, villagerGetTradesInSlot(handler.getSlot(1).getStack(), buy2));
+        }
+
+        return count;
+    }
+
+    private static int villagerGetTradesInSlot(ItemStack stack, ItemStack buyItem)
+    {
+        if (buyItem.isEmpty() || isStackEmpty(stack) || areStacksEqual(stack, buyItem) == false)
+        {
+            return 0;
+        }
+
+        return getStackSize(stack) / getStackSize(buyItem);
+    }
+
+    /**
+     * Takes <b>trades</b> single trades from the output slot via the cursor,
+     * emptying the cursor into the player inventory whenever it's full
+     */
+    private static void villagerTakeSingleTrades(MerchantScreen gui, Slot outputSlot, ItemStack sellItem, int trades)
+    {
+        ScreenHandler handler = gui.getScreenHandler();
+
+        for (int i = 0; i < trades && areStacksEqual(sellItem, outputSlot.getStack()); ++i)
+        {
+            ItemStack cursor = handler.getCursorStack();
+
+            if (isStackEmpty(cursor) == false && getStackSize(cursor) + getStackSize(sellItem) > cursor.getMaxCount())
+            {
+                tryClearCursor(gui);
             }
 
-            villagerClearTradeInputSlots();
+            leftClickSlot(gui, outputSlot.id);
         }
+
+        tryClearCursor(gui);
     }
 
     public static boolean villagerTradeEverythingPossibleWithAllFavoritedTrades()
@@ -791,16 +1044,25 @@ public class InventoryUtils
 
         if (screen instanceof MerchantScreen)
         {
-            MerchantScreenHandler handler = ((MerchantScreen) screen).getScreenHandler();
+            MerchantScreen merchantGui = (MerchantScreen) screen;
+            MerchantScreenHandler handler = merchantGui.getScreenHandler();
             IntArrayList favorites = VillagerDataStorage.getInstance().getFavoritesForCurrentVillager(handler).favorites;
+            PlayerInventory inv = MinecraftClient.getInstance().player.getInventory();
 
-            for (int index = 0; index < favorites.size(); ++index)
+            List<TradePlanner.Allocation> plan = TradePlanner.planFavoriteTrades(handler, inv, favorites.size());
+
+            // Allocate the budget between all the favorites first, then run the whole plan as one batch.
+            // The out of stock trades never get an allocation, so they don't cost any packets.
+            if (plan.isEmpty() == false)
             {
-                VillagerUtils.switchToTradeByVisibleIndex(index);
-                villagerTradeEverythingPossibleWithTrade(index);
-            }
+                for (TradePlanner.Allocation allocation : plan)
+                {
+                    villagerDoTrades(merchantGui, allocation.visibleIndex, allocation.getTrades(), true);
+                }
 
-            villagerClearTradeInputSlots();
+                villagerClearTradeInputSlots();
+                VillagerDataStorage.getInstance().updateOfferSnapshot(((IMerchantScreenHandler) handler).getOriginalList());
+            }
 
             return true;
         }
@@ -1338,6 +1600,14 @@ public class InventoryUtils
         }
     }
 
+    public static void clearAllCraftingGridsOfAllItems(HandledScreen<? extends ScreenHandler> gui)
+    {
+        for (Slot craftingOutputSlot : CraftingHandler.getCraftingOutputSlotsForGui(gui))
+        {
+            clearCraftingGridOfAllItems(gui, CraftingHandler.getCraftingGridSlots(gui, craftingOutputSlot));
+        }
+    }
+
     private static boolean clearCraftingGridOfItems(RecipePattern recipe,
                                                     HandledScreen<? extends ScreenHandler> gui,
                                                     SlotRange range,
@@ -1353,7 +1623,7 @@ public class InventoryUtils
             Slot slotTmp = gui.getScreenHandler().getSlot(slotNum);
 
             if (slotTmp != null && slotTmp.hasStack() &&
-                (clearNonMatchingOnly == false || areStacksEqual(recipe.getRecipeItems()[i], slotTmp.getStack()) == false))
+                (clearNonMatchingOnly == false || recipe.isAcceptedInSlot(i, slotTmp.getStack()) == false))
             {
                 shiftClickSlot(gui, slotNum);
 
@@ -1393,10 +1663,10 @@ public class InventoryUtils
         return clearedAll;
     }
 
-    private static boolean tryMoveItemsToCraftingGridSlots(RecipePattern recipe,
-                                                           Slot slot,
-                                                           HandledScreen<? extends ScreenHandler> gui,
-                                                           boolean fillStacks)
+    public static boolean tryMoveItemsToCraftingGridSlots(RecipePattern recipe,
+                                                          Slot slot,
+                                                          HandledScreen<? extends ScreenHandler> gui,
+                                                          boolean fillStacks)
     {
         ScreenHandler container = gui.getScreenHandler();
         int numSlots = container.slots.size();
@@ -1413,13 +1683,12 @@ public class InventoryUtils
 
             // This slot is used to check that we get items from a DIFFERENT inventory than where this slot is in
             Slot slotGridFirst = container.getSlot(range.getFirst());
-            Map<ItemType, IntArrayList> ingredientSlots = ItemType.getSlotsPerItem(recipe.getRecipeItems());
 
-            for (Map.Entry<ItemType, IntArrayList> entry : ingredientSlots.entrySet())
+            for (RecipePlan.IngredientEntry entry : recipe.getPlan().getIngredients())
             {
-                ItemStack ingredientReference = entry.getKey().getStack();
-                IntArrayList recipeSlots = entry.getValue();
-                IntArrayList targetSlots = new IntArrayList();
+                IntList recipeSlots = entry.getCells();
+                ItemStack ingredientReference = getIngredientToFillWith(recipe, gui, range, slotGridFirst, entry.getType().getStack(), recipeSlots);
+                IntArrayList targetSlots = new IntArrayList(recipeSlots.size());
 
                 // Get the actual target slot numbers based on the grid's start and the relative positions inside the grid
                 for (int s : recipeSlots)
@@ -1441,6 +1710,63 @@ public class InventoryUtils
         return false;
     }
 
+    /**
+     * Returns the item to fill the given recipe cells with. This is the stored recipe item,
+     * unless the recipe has tag aware ingredients for these cells, in which case an acceptable
+     * item already in the cells is topped up, or if the stored item has run out,
+     * the acceptable item with the most items available is used instead.
+     */
+    private static ItemStack getIngredientToFillWith(RecipePattern recipe,
+                                                     HandledScreen<? extends ScreenHandler> gui,
+                                                     SlotRange range,
+                                                     Slot slotGridFirst,
+                                                     ItemStack storedIngredient,
+                                                     IntList recipeSlots)
+    {
+        if (recipe.hasIngredientAcceptors() == false)
+        {
+            return storedIngredient;
+        }
+
+        ScreenHandler container = gui.getScreenHandler();
+        final int cell = recipeSlots.getInt(0);
+
+        for (int s : recipeSlots)
+        {
+            ItemStack stack = container.getSlot(s + range.getFirst()).getStack();
+
+            if (isStackEmpty(stack) == false && recipe.isAcceptedInSlot(s, stack))
+            {
+                return stack.copy();
+            }
+        }
+
+        Map<ItemType, Integer> available = new HashMap<>();
+
+        for (Slot slot : container.slots)
+        {
+            ItemStack stack = slot.getStack();
+
+            if (areSlotsInSameInventory(slot, slotGridFirst) == false && isStackEmpty(stack) == false)
+            {
+                if (areStacksEqual(stack, storedIngredient))
+                {
+                    return storedIngredient;
+                }
+
+                if (recipe.isAcceptedInSlot(cell, stack))
+                {
+                    available.merge(new ItemType(stack), getStackSize(stack), Integer::sum);
+                }
+            }
+        }
+
+        return available.entrySet().stream()
+                        .max(Map.Entry.comparingByValue())
+                        .map(entry -> entry.getKey().getStack())
+                        .orElse(storedIngredient);
+    }
+
     private static void fillCraftingGrid(HandledScreen<? extends ScreenHandler> gui,
                                          Slot slotGridFirst,
                                          ItemStack ingredientReference,
@@ -1456,6 +1782,11 @@ public class InventoryUtils
             return;
         }
 
+        if (tryFillEmptyCraftingGridSlotsWithFullStacks(gui, slotGridFirst, ingredientReference, targetSlots))
+        {
+            return;
+        }
+
         while (true)
         {
             slotNum = getSlotNumberOfLargestMatchingStackFromDifferentInventory(container, slotGridFirst, ingredientReference);
@@ -1524,6 +1855,138 @@ public class InventoryUtils
         }
     }
 
+    /**
+     * If all the target slots are empty and there are enough full source stacks available,
+     * then the cheaper of moving whole stacks (pick up + place, or hotbar swaps) and the
+     * default drag-split loop is selected via the click cost model.
+     * @return true if the slots were filled using whole stack moves, false if the drag-split should be used
+     */
+    private static boolean tryFillEmptyCraftingGridSlotsWithFullStacks(HandledScreen<? extends ScreenHandler> gui,
+                                                                       Slot slotGridFirst,
+                                                                       ItemStack ingredientReference,
+                                                                       IntArrayList targetSlots)
+    {
+        ScreenHandler container = gui.getScreenHandler();
+        final int numSlots = container.slots.size();
+
+        if (isStackEmpty(gui.getScreenHandler().getCursorStack()) == false)
+        {
+            return false;
+        }
+
+        for (int slotNum : targetSlots)
+        {
+            if (slotNum >= numSlots || container.getSlot(slotNum).hasStack())
+            {
+                return false;
+            }
+        }
+
+        final int maxSize = ingredientReference.getMaxCount();
+        final int targetCount = targetSlots.size();
+        IntArrayList sourceSizes = new IntArrayList();
+        int fullStacks = 0;
+
+        for (Slot slot : container.slots)
+        {
+            if (areSlotsInSameInventory(slot, slotGridFirst) == false && slot.hasStack() &&
+                areStacksEqual(ingredientReference, slot.getStack()))
+            {
+                int size = getStackSize(slot.getStack());
+                sourceSizes.add(size);
+
+                if (size >= maxSize)
+                {
+                    ++fullStacks;
+                }
+            }
+        }
+
+        if (fullStacks < targetCount)
+        {
+            return false;
+        }
+
+        // The drag-split uses the largest stacks first, until all the slots are full
+        sourceSizes.sort((a, b) -> Integer.compare(b, a));
+        int needed = targetCount * maxSize;
+        int dragPasses = 0;
+
+        for (int i = 0; i < sourceSizes.size() && needed > 0; ++i)
+        {
+            needed -= sourceSizes.getInt(i);
+            ++dragPasses;
+        }
+
+        PlayerInventory inv = MinecraftClient.getInstance().player.getInventory();
+        IntArrayList hotbarSlots = getPlayerHotbarIndicesWithFullStacks(ingredientReference, inv);
+        ClickCostModel.GridFillStrategy strategy = ClickCostModel.selectGridFillStrategy(targetCount, dragPasses, fullStacks, hotbarSlots.size());
+
+        if (strategy == ClickCostModel.GridFillStrategy.HOTBAR_SWAP)
+        {
+            for (int i = 0; i < targetCount; ++i)
+            {
+                clickSlot(gui, targetSlots.getInt(i), hotbarSlots.getInt(i), SlotActionType.SWAP);
+            }
+
+            return true;
+        }
+        else if (strategy == ClickCostModel.GridFillStrategy.PICKUP_PLACE)
+        {
+            for (int targetSlot : targetSlots)
+            {
+                int sourceSlot = getSlotNumberOfLargestMatchingStackFromDifferentInventory(container, slotGridFirst, ingredientReference);
+
+                if (sourceSlot < 0)
+                {
+                    break;
+                }
+
+                leftClickSlot(gui, sourceSlot);
+                leftClickSlot(gui, targetSlot);
+
+                // Something went wrong, put the items back and stop
+                if (isStackEmpty(gui.getScreenHandler().getCursorStack()) == false)
+                {
+                    leftClickSlot(gui, sourceSlot);
+                    break;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the SWAP action button numbers (0-8 for the hotbar, 40 for the offhand)
+     * of the player's full stacks matching the given item
+     */
+    private static IntArrayList getPlayerHotbarIndicesWithFullStacks(ItemStack stackReference, PlayerInventory inv)
+    {
+        IntArrayList indices = new IntArrayList();
+
+        for (int index = 0; index < 9; ++index)
+        {
+            ItemStack stack = inv.main.get(index);
+
+            if (areStacksEqual(stack, stackReference) && getStackSize(stack) >= stack.getMaxCount())
+            {
+                indices.add(index);
+            }
+        }
+
+        ItemStack offhand = inv.offHand.get(0);
+
+        if (areStacksEqual(offhand, stackReference) && getStackSize(offhand) >= offhand.getMaxCount())
+        {
+            indices.add(40);
+        }
+
+        return indices;
+    }
+
     public static void rightClickCraftOneStack(HandledScreen<? extends ScreenHandler> gui)
     {
         Slot slot = AccessorUtils.getSlotUnderMouse(gui);
@@ -1557,28 +2020,32 @@ public class InventoryUtils
     public static void craftEverythingPossibleWithCurrentRecipe(RecipePattern recipe,
                                                                 HandledScreen<? extends ScreenHandler> gui)
     {
-        Slot slot = CraftingHandler.getFirstCraftingOutputSlotForGui(gui);
+        if (isStackEmpty(recipe.getResult()))
+        {
+            return;
+        }
 
-        if (slot != null && isStackEmpty(recipe.getResult()) == false)
+        setPredictedCraftingRecipe(recipe);
+
+        for (Slot slot : CraftingHandler.getCraftingOutputSlotsForGui(gui))
         {
             SlotRange range = CraftingHandler.getCraftingGridSlots(gui, slot);
 
-            if (range != null)
+            // Clear all items from the grid first, to avoid unbalanced stacks
+            if (range == null || clearCraftingGridOfItems(recipe, gui, range, false) == false)
             {
-                // Clear all items from the grid first, to avoid unbalanced stacks
-                if (clearCraftingGridOfItems(recipe, gui, range, false) == false)
-                {
-                    return;
-                }
+                continue;
+            }
 
-                tryMoveItemsToCraftingGridSlots(recipe, slot, gui, true);
+            tryMoveItemsToCraftingGridSlots(recipe, slot, gui, true);
 
-                if (slot.hasStack())
-                {
-                    craftAsManyItemsAsPossible(recipe, slot, gui);
-                }
+            if (slot.hasStack())
+            {
+                craftAsManyItemsAsPossible(recipe, slot, gui);
             }
         }
+
+        setPredictedCraftingRecipe(null);
     }
 
     public static void moveAllCraftingResultsToOtherInventory(RecipePattern recipe,
@@ -1614,25 +2081,65 @@ public class InventoryUtils
         }
     }
 
+    /**
+     * Drops all the stacks of the recipe's result item, except the ones in the
+     * crafting grids and the output slots of any of the screen's crafting grids.
+     */
     public static void throwAllCraftingResultsToGround(RecipePattern recipe,
                                                        HandledScreen<? extends ScreenHandler> gui)
     {
-        Slot slot = CraftingHandler.getFirstCraftingOutputSlotForGui(gui);
+        List<Slot> outputSlots = CraftingHandler.getCraftingOutputSlotsForGui(gui);
+
+        if (outputSlots.isEmpty() || isStackEmpty(recipe.getResult()))
+        {
+            return;
+        }
 
-        if (slot != null && isStackEmpty(recipe.getResult()) == false)
+        ItemStack stackReference = recipe.getResult().copy();
+
+        for (Slot slot : gui.getScreenHandler().slots)
         {
-            dropStacks(gui, recipe.getResult(), slot, false);
+            if (areStacksEqual(slot.getStack(), stackReference) && isInAnyCraftingGrid(gui, slot, outputSlots) == false)
+            {
+                dropStack(gui, slot.id);
+            }
         }
     }
 
+    private static boolean isInAnyCraftingGrid(HandledScreen<? extends ScreenHandler> gui, Slot slot, List<Slot> outputSlots)
+    {
+        for (Slot outputSlot : outputSlots)
+        {
+            SlotRange range = CraftingHandler.getCraftingGridSlots(gui, outputSlot);
+
+            if (areSlotsInSameInventory(slot, outputSlot) || (range != null && range.contains(slot.id)))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public static void throwAllNonRecipeItemsToGround(RecipePattern recipe,
                                                       HandledScreen<? extends ScreenHandler> gui)
     {
         Slot outputSlot = CraftingHandler.getFirstCraftingOutputSlotForGui(gui);
 
-        if (outputSlot != null && isStackEmpty(recipe.getResult()) == false)
+        if (outputSlot != null)
+        {
+            throwAllNonRecipeItemsToGround(recipe, gui, outputSlot);
+        }
+    }
+
+    public static void throwAllNonRecipeItemsToGround(RecipePattern recipe,
+                                                      HandledScreen<? extends ScreenHandler> gui,
+                                                      Slot outputSlot)
+    {
+        SlotRange range = CraftingHandler.getCraftingGridSlots(gui, outputSlot);
+
+        if (range != null && isStackEmpty(recipe.getResult()) == false)
         {
-            SlotRange range = CraftingHandler.getCraftingGridSlots(gui, outputSlot);
             ItemStack[] recipeItems = recipe.getRecipeItems();
             final int invSlots = gui.getScreenHandler().slots.size();
             final int rangeSlots = Math.min(range.getSlotCount(), recipeItems.length);
@@ -1642,7 +2149,7 @@ public class InventoryUtils
                 Slot slotTmp = gui.getScreenHandler().getSlot(slotNum);
                 ItemStack stack = slotTmp.getStack();
 
-                if (stack.isEmpty() == false && areStacksEqual(stack, recipeItems[i]) == false)
+                if (stack.isEmpty() == false && recipe.isAcceptedInSlot(i, stack) == false)
                 {
                     dropAllMatchingStacks(gui, stack);
                 }
@@ -1663,8 +2170,22 @@ public class InventoryUtils
             final int invSlots = gui.getScreenHandler().slots.size();
             final int rangeSlots = Math.min(range.getSlotCount(), recipeItems.length);
             IntArrayList toRemove = new IntArrayList();
+            Map<ItemType, Integer> needs = new HashMap<>();
             boolean movedSomething = false;
 
+            for (int i = 0, slotNum = range.getFirst(); i < rangeSlots && slotNum < invSlots; i++, slotNum++)
+            {
+                ItemStack recipeStack = recipeItems[i];
+
+                if (isStackEmpty(recipeStack) == false &&
+                    areStacksEqual(recipeStack, gui.getScreenHandler().getSlot(slotNum).getStack()) == false)
+                {
+                    needs.merge(new ItemType(recipeStack), 1, Integer::sum);
+                }
+            }
+
+            HotbarSwapPlanner planner = new HotbarSwapPlanner(gui, inv, needs);
+
             setInhibitCraftingOutputUpdate(true);
 
             for (int i = 0, slotNum = range.getFirst(); i < rangeSlots && slotNum < invSlots; i++, slotNum++)
@@ -1680,15 +2201,9 @@ public class InventoryUtils
                     {
                         toRemove.add(slotNum);
                     }
-                    else
+                    else if (planner.swapIntoSlot(recipeStack, slotNum))
                     {
-                        int index = getPlayerInventoryIndexWithItem(recipeStack, inv);
-
-                        if (index >= 0)
-                        {
-                            clickSlot(gui, slotNum, index, SlotActionType.SWAP);
-                            movedSomething = true;
-                        }
+                        movedSomething = true;
                     }
                 }
             }
@@ -1714,6 +2229,207 @@ public class InventoryUtils
         }
     }
 
+    /**
+     * Pipelined version of the mass craft loop. The cursor and the grids are only cleaned up
+     * when there are no buffered clicks in flight, after that each refill is planned from the
+     * predicted post-extraction grid state and queued right behind the previous extraction clicks.
+     * When rate limiting the click packets, this keeps planning until the buffer holds
+     * at least <b>packetTarget</b> clicks, so that it never runs dry between the ticks.
+     * If the screen has several crafting grids, then the refills and extractions go round-robin
+     * over all of them, with the ingredients shared from one inventory count index.
+     * Only whole iterations are planned, ie. a new refill is only started if the extraction
+     * still fits under the target, by the sink's precomputed click budget.
+     * @return the number of refill + extract iterations that were queued
+     */
+    public static int massCraftPipelined(RecipePattern recipe,
+                                         HandledScreen<? extends ScreenHandler> gui,
+                                         List<Slot> outputSlots,
+                                         CraftOutputSink sink,
+                                         int packetTarget,
+                                         int maxIterations)
+    {
+        ItemStack result = recipe.getResult();
+
+        if (isStackEmpty(result) || outputSlots.isEmpty())
+        {
+            return 0;
+        }
+
+        // Nothing in flight, so the local state is also the server state. Clean up once before starting.
+        if (ClickPacketBuffer.getBufferedActionsCount() == 0)
+        {
+            tryClearCursor(gui);
+            setInhibitCraftingOutputUpdate(true);
+
+            for (Slot outputSlot : outputSlots)
+            {
+                throwAllNonRecipeItemsToGround(recipe, gui, outputSlot);
+            }
+
+            setInhibitCraftingOutputUpdate(false);
+        }
+
+        sink.planTargets(gui);
+        final int packetLimit = packetTarget - sink.getIterationClickBudget();
+        ItemCountIndex available = ItemCountIndex.fromPlayerInventory(MinecraftClient.getInstance().player.getInventory());
+        int iterations = 0;
+        boolean craftedSomething = true;
+
+        setPredictedCraftingRecipe(recipe);
+
+        while (craftedSomething && iterations < maxIterations && ClickPacketBuffer.getBufferedActionsCount() <= packetLimit)
+        {
+            craftedSomething = false;
+
+            for (Slot outputSlot : outputSlots)
+            {
+                if (iterations >= maxIterations || ClickPacketBuffer.getBufferedActionsCount() > packetLimit)
+                {
+                    break;
+                }
+
+                // The grid may still hold items from the previous pass, so only skip it if it's also empty
+                if (available.getCraftableCount(recipe) <= 0 && getCraftCountInGrid(recipe, gui, outputSlot) <= 0)
+                {
+                    continue;
+                }
+
+                if (sink.getRemainingCrafts() <= 0)
+                {
+                    craftedSomething = false;
+                    break;
+                }
+
+                int craftsBefore = getCraftCountInGrid(recipe, gui, outputSlot);
+
+                setInhibitCraftingOutputUpdate(true);
+                tryMoveItemsToCraftingGridSlots(recipe, outputSlot, gui, true);
+                setInhibitCraftingOutputUpdate(false);
+                updateCraftingOutputSlot(outputSlot);
+
+                if (areStacksEqual(outputSlot.getStack(), result) == false)
+                {
+                    continue;
+                }
+
+                // The grid will be fully consumed by this many crafts, so the extraction can be queued
+                // as one batch without checking the output slot between the clicks.
+                int crafts = getCraftCountInGrid(recipe, gui, outputSlot);
+                available.removeRecipeIngredients(recipe, crafts - craftsBefore);
+
+                int extracted = sink.extract(gui, outputSlot, crafts);
+
+                if (extracted <= 0)
+                {
+                    craftedSomething = false;
+                    break;
+                }
+
+                craftedSomething = true;
+                ++iterations;
+            }
+        }
+
+        setPredictedCraftingRecipe(null);
+
+        return iterations;
+    }
+
+    /**
+     * Returns how many times the recipe can be crafted with the items currently in the grid,
+     * ie. the smallest stack size in the grid slots that are used by the recipe.
+     */
+    public static int getCraftCountInGrid(RecipePattern recipe,
+                                          HandledScreen<? extends ScreenHandler> gui,
+                                          Slot outputSlot)
+    {
+        SlotRange range = CraftingHandler.getCraftingGridSlots(gui, outputSlot);
+
+        if (range == null)
+        {
+            return 0;
+        }
+
+        RecipePlan plan = recipe.getPlan();
+        final int invSlots = gui.getScreenHandler().slots.size();
+        final int rangeSlots = Math.min(range.getSlotCount(), recipe.getRecipeLength());
+        int count = Integer.MAX_VALUE;
+
+        for (int i = 0, slotNum = range.getFirst(); i < rangeSlots && slotNum < invSlots; i++, slotNum++)
+        {
+            if (plan.isCellUsed(i))
+            {
+                count = Math.min(count, getStackSize(gui.getScreenHandler().getSlot(slotNum).getStack()));
+            }
+        }
+
+        return count != Integer.MAX_VALUE ? count : 0;
+    }
+
+    /**
+     * Refills the crafting grid with the recipe and crafts at most <b>maxCrafts</b> times
+     * into the player inventory. A full grid is shift-clicked out at once, a partial
+     * last batch is picked up one craft at a time via the cursor.
+     * @return the number of crafts done, 0 if the recipe couldn't be crafted at all
+     */
+    public static int craftRecipeIntoPlayerInventory(RecipePattern recipe,
+                                                     HandledScreen<? extends ScreenHandler> gui,
+                                                     Slot outputSlot,
+                                                     int maxCrafts)
+    {
+        ItemStack result = recipe.getResult();
+
+        if (maxCrafts <= 0 || isStackEmpty(result) || CraftingHandler.getCraftingGridSlots(gui, outputSlot) == null)
+        {
+            return 0;
+        }
+
+        tryClearCursor(gui);
+
+        setInhibitCraftingOutputUpdate(true);
+        tryMoveItemsToCraftingGridSlots(recipe, outputSlot, gui, true);
+        setInhibitCraftingOutputUpdate(false);
+        updateCraftingOutputSlot(outputSlot);
+
+        if (areStacksEqual(outputSlot.getStack(), result) == false)
+        {
+            return 0;
+        }
+
+        int gridCrafts = getCraftCountInGrid(recipe, gui, outputSlot);
+
+        if (gridCrafts <= maxCrafts)
+        {
+            shiftClickSlot(gui, outputSlot.id);
+            return gridCrafts - getCraftCountInGrid(recipe, gui, outputSlot);
+        }
+
+        final int perCraft = getStackSize(result);
+        int crafts = 0;
+
+        while (crafts < maxCrafts && areStacksEqual(outputSlot.getStack(), result))
+        {
+            ItemStack cursor = gui.getScreenHandler().getCursorStack();
+
+            if (isStackEmpty(cursor) == false && getStackSize(cursor) + perCraft > cursor.getMaxCount())
+            {
+                tryClearCursor(gui);
+
+                if (isStackEmpty(gui.getScreenHandler().getCursorStack()) == false)
+                {
+                    break;
+                }
+            }
+
+            leftClickSlot(gui, outputSlot.id);
+            ++crafts;
+        }
+
+        tryClearCursor(gui);
+
+        return crafts;
+    }
+
     private static int putSingleItemIntoSlots(HandledScreen<? extends ScreenHandler> gui,
                                               IntArrayList targetSlots,
                                               int startIndex)
@@ -2071,7 +2787,7 @@ public class InventoryUtils
         return ItemStack.areItemsAndComponentsEqual(stack1, stack2);
     }
 
-    private static boolean areSlotsInSameInventory(Slot slot1, Slot slot2)
+    static boolean areSlotsInSameInventory(Slot slot1, Slot slot2)
     {
         return areSlotsInSameInventory(slot1, slot2, false);
     }
@@ -2713,6 +3429,21 @@ public class InventoryUtils
         clickSlot(gui, slotNum, 0, SlotActionType.QUICK_MOVE);
     }
 
+    /**
+     * Presses a screen handler button (for example a stonecutter recipe) locally and on the server.
+     * The button packet goes through the click packet buffer, so it stays in order with the slot clicks.
+     */
+    public static void selectScreenHandlerButton(HandledScreen<? extends ScreenHandler> gui, int buttonId)
+    {
+        MinecraftClient mc = MinecraftClient.getInstance();
+        ScreenHandler handler = gui.getScreenHandler();
+
+        if (mc.player != null && mc.interactionManager != null && handler.onButtonClick(mc.player, buttonId))
+        {
+            mc.interactionManager.clickButton(handler.syncId, buttonId);
+        }
+    }
+
     public static void dropItemsFromCursor(HandledScreen<? extends ScreenHandler> gui)
     {
         clickSlot(gui, -999, 0, SlotActionType.PICKUP);
@@ -2735,8 +3466,8 @@ public class InventoryUtils
         clickSlot(gui, slotNum, 0, SlotActionType.SWAP);
     }
 
-    private static void dragSplitItemsIntoSlots(HandledScreen<? extends ScreenHandler> gui,
-                                                IntArrayList targetSlots)
+    static void dragSplitItemsIntoSlots(HandledScreen<? extends ScreenHandler> gui,
+                                        IntArrayList targetSlots)
     {
         ItemStack stackInCursor = gui.getScreenHandler().getCursorStack();
 
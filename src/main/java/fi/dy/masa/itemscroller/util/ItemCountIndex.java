@@ -0,0 +1,159 @@
+package fi.dy.masa.itemscroller.util;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import fi.dy.masa.itemscroller.recipes.RecipePattern;
+import fi.dy.masa.itemscroller.recipes.RecipePlan;
+
+/**
+ * Item counts per item type, so that several consumers (for example multiple crafting grids
+ * in the same screen) can plan against the same inventory contents without re-scanning it.
+ */
+public class ItemCountIndex
+{
+    private final Object2IntOpenHashMap<ItemType> counts = new Object2IntOpenHashMap<>();
+
+    public static ItemCountIndex fromPlayerInventory(PlayerInventory inventory)
+    {
+        ItemCountIndex index = new ItemCountIndex();
+
+        for (ItemStack stack : inventory.main)
+        {
+            index.add(stack, stack.getCount());
+        }
+
+        return index;
+    }
+
+    public void add(ItemStack stack, int count)
+    {
+        if (InventoryUtils.isStackEmpty(stack) == false && count != 0)
+        {
+            this.counts.addTo(new ItemType(stack), count);
+        }
+    }
+
+    public void clear()
+    {
+        this.counts.clear();
+    }
+
+    public int getCount(ItemType type)
+    {
+        return this.counts.getInt(type);
+    }
+
+    public int getCount(ItemStack stack)
+    {
+        return InventoryUtils.isStackEmpty(stack) ? 0 : this.counts.getInt(new ItemType(stack));
+    }
+
+    /**
+     * Removes up to <b>count</b> items of the given type.
+     * @return the number of items actually removed
+     */
+    public int remove(ItemType type, int count)
+    {
+        int removed = Math.min(count, this.counts.getInt(type));
+
+        if (removed > 0)
+        {
+            this.counts.addTo(type, -removed);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns the number of indexed items accepted in the given recipe grid cell.
+     * This is the exact stored item, plus any tag aware substitutes if those are enabled.
+     */
+    public int getAcceptedCount(RecipePattern recipe, int cell)
+    {
+        ItemStack stored = recipe.getRecipeItems()[cell];
+
+        if (recipe.hasIngredientAcceptors() == false)
+        {
+            return this.getCount(stored);
+        }
+
+        int count = 0;
+
+        for (Object2IntMap.Entry<ItemType> entry : this.counts.object2IntEntrySet())
+        {
+            if (recipe.isAcceptedInSlot(cell, entry.getKey().getStack()))
+            {
+                count += entry.getIntValue();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes up to <b>count</b> items accepted in the given recipe grid cell,
+     * the exact stored item first.
+     * @return the number of items actually removed
+     */
+    public int removeAccepted(RecipePattern recipe, int cell, int count)
+    {
+        ItemStack stored = recipe.getRecipeItems()[cell];
+        int removed = InventoryUtils.isStackEmpty(stored) ? 0 : this.remove(new ItemType(stored), count);
+
+        if (removed < count && recipe.hasIngredientAcceptors())
+        {
+            for (Object2IntMap.Entry<ItemType> entry : this.counts.object2IntEntrySet())
+            {
+                if (removed >= count)
+                {
+                    break;
+                }
+
+                if (entry.getIntValue() > 0 && recipe.isAcceptedInSlot(cell, entry.getKey().getStack()))
+                {
+                    int amount = Math.min(count - removed, entry.getIntValue());
+                    entry.setValue(entry.getIntValue() - amount);
+                    removed += amount;
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * @return how many times the given recipe could be crafted using the indexed items
+     */
+    public int getCraftableCount(RecipePattern recipe)
+    {
+        int crafts = Integer.MAX_VALUE;
+
+        for (RecipePlan.IngredientEntry entry : recipe.getPlan().getIngredients())
+        {
+            int available = this.getAcceptedCount(recipe, entry.getFirstCell());
+            crafts = Math.min(crafts, available / entry.getCountPerCraft());
+        }
+
+        return crafts != Integer.MAX_VALUE ? crafts : 0;
+    }
+
+    /**
+     * Removes the ingredients of <b>crafts</b> crafts of the given recipe
+     */
+    public void removeRecipeIngredients(RecipePattern recipe, int crafts)
+    {
+        for (RecipePlan.IngredientEntry entry : recipe.getPlan().getIngredients())
+        {
+            this.removeAccepted(recipe, entry.getFirstCell(), crafts * entry.getCountPerCraft());
+        }
+    }
+
+    public ItemCountIndex copy()
+    {
+        ItemCountIndex copy = new ItemCountIndex();
+        copy.counts.putAll(this.counts);
+        return copy;
+    }
+}
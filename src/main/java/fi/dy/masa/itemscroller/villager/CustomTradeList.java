@@ -0,0 +1,99 @@
+package fi.dy.masa.itemscroller.villager;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.village.TradeOffer;
+import net.minecraft.village.TradeOfferList;
+
+/**
+ * The reordered (favorites first) trade list, together with
+ * the real (server-side) trade index for each visible index.
+ */
+public class CustomTradeList
+{
+    public final TradeOfferList list;
+    private final IntArrayList realIndices;
+    private final boolean ownsList;
+    private int favoriteCount;
+
+    public CustomTradeList(TradeOfferList list, IntArrayList realIndices, int favoriteCount, boolean ownsList)
+    {
+        this.list = list;
+        this.realIndices = realIndices;
+        this.favoriteCount = favoriteCount;
+        this.ownsList = ownsList;
+    }
+
+    /**
+     * @return the real trade index for the given visible index, or -1 if it's out of range
+     */
+    public int getRealIndex(int visibleIndex)
+    {
+        if (visibleIndex >= 0 && visibleIndex < this.realIndices.size())
+        {
+            return this.realIndices.getInt(visibleIndex);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Moves the trade with the given real index in or out of the favorites section,
+     * after its favorite state has been toggled, without rebuilding the whole list.
+     * @return true if the patched list now matches the given favorites,
+     * false if the list needs to be rebuilt instead
+     */
+    public boolean patchFavorite(int realIndex, FavoriteData favorites)
+    {
+        int visibleIndex = this.realIndices.indexOf(realIndex);
+
+        if (this.ownsList == false || visibleIndex < 0)
+        {
+            return false;
+        }
+
+        TradeOffer trade = this.list.remove(visibleIndex);
+        this.realIndices.removeInt(visibleIndex);
+
+        if (visibleIndex < this.favoriteCount)
+        {
+            // Removed from the favorites, put it back to its original position among the non-favorites
+            int pos = --this.favoriteCount;
+            final int size = this.realIndices.size();
+
+            while (pos < size && this.realIndices.getInt(pos) < realIndex)
+            {
+                ++pos;
+            }
+
+            this.list.add(pos, trade);
+            this.realIndices.add(pos, realIndex);
+        }
+        else
+        {
+            // New favorites go to the end of the favorites section
+            this.list.add(this.favoriteCount, trade);
+            this.realIndices.add(this.favoriteCount, realIndex);
+            ++this.favoriteCount;
+        }
+
+        return this.hasFavorites(favorites);
+    }
+
+    private boolean hasFavorites(FavoriteData favorites)
+    {
+        if (favorites.favorites.size() != this.favoriteCount)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < this.favoriteCount; ++i)
+        {
+            if (favorites.favorites.getInt(i) != this.realIndices.getInt(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -1,15 +1,43 @@
 package fi.dy.masa.itemscroller.villager;
 
+import java.util.BitSet;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 public class FavoriteData
 {
     public final IntArrayList favorites;
     public final boolean isGlobal;
+    private final BitSet favoriteSet;
 
     public FavoriteData(IntArrayList favorites, boolean isGlobal)
+    {
+        this(favorites, createSet(favorites), isGlobal);
+    }
+
+    public FavoriteData(IntArrayList favorites, BitSet favoriteSet, boolean isGlobal)
     {
         this.favorites = favorites;
+        this.favoriteSet = favoriteSet;
         this.isGlobal = isGlobal;
     }
+
+    public boolean isFavorite(int tradeIndex)
+    {
+        return tradeIndex >= 0 && this.favoriteSet.get(tradeIndex);
+    }
+
+    private static BitSet createSet(IntArrayList favorites)
+    {
+        BitSet set = new BitSet();
+
+        for (int index : favorites)
+        {
+            if (index >= 0)
+            {
+                set.set(index);
+            }
+        }
+
+        return set;
+    }
 }
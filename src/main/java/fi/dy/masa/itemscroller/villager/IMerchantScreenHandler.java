@@ -5,4 +5,16 @@ import net.minecraft.village.TradeOfferList;
 public interface IMerchantScreenHandler
 {
     TradeOfferList getOriginalList();
+
+    /**
+     * @return the real (server-side) trade index for the given index in the visible (custom) trade list,
+     * or -1 if the index is not valid
+     */
+    int getRealTradeIndex(int visibleIndex);
+
+    /**
+     * Updates the custom trade list in place after the favorite state of the given trade was toggled.
+     * @return false if the list could not be patched, and needs to be rebuilt via setOffers()
+     */
+    boolean patchFavorite(int realIndex, FavoriteData favorites);
 }
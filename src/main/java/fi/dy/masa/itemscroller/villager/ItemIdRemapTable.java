@@ -0,0 +1,93 @@
+package fi.dy.masa.itemscroller.villager;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+
+/**
+ * Maps the packed trade types ({@link TradeType#getPackedId()}) between the session-specific
+ * raw item registry ids and the ids local to one saved file. The file stores the item identifier
+ * of each of its local ids once, so the packed values survive registry changes, and loading
+ * only needs to parse each distinct identifier once.
+ */
+public class ItemIdRemapTable
+{
+    private final Int2IntOpenHashMap rawToFileIds = new Int2IntOpenHashMap();
+    private final NbtList identifiers = new NbtList();
+
+    public ItemIdRemapTable()
+    {
+        this.rawToFileIds.defaultReturnValue(-1);
+    }
+
+    /**
+     * @return the given packed trade type with the raw ids replaced with the file's local ids
+     */
+    public long toFileId(long packedId)
+    {
+        return TradeType.packRawIds(this.getFileId(TradeType.getRawId(packedId, 0)),
+                                    this.getFileId(TradeType.getRawId(packedId, 1)),
+                                    this.getFileId(TradeType.getRawId(packedId, 2)));
+    }
+
+    private int getFileId(int rawId)
+    {
+        int fileId = this.rawToFileIds.get(rawId);
+
+        if (fileId == -1)
+        {
+            fileId = this.identifiers.size();
+            this.rawToFileIds.put(rawId, fileId);
+            this.identifiers.add(NbtString.of(TradeType.getNameForItem(Registries.ITEM.get(rawId))));
+        }
+
+        return fileId;
+    }
+
+    public NbtList toNBT()
+    {
+        return this.identifiers;
+    }
+
+    /**
+     * @return the current raw registry id for each of the file's local ids,
+     * or -1 for the items that don't exist anymore
+     */
+    public static int[] readRemap(NbtList tagList)
+    {
+        int[] remap = new int[tagList.size()];
+
+        for (int i = 0; i < remap.length; ++i)
+        {
+            Identifier id = Identifier.tryParse(tagList.getString(i));
+            remap[i] = id != null && Registries.ITEM.containsId(id) ? Registries.ITEM.getRawId(Registries.ITEM.get(id)) : -1;
+        }
+
+        return remap;
+    }
+
+    /**
+     * @return the packed trade type with the file's local ids replaced with the current raw ids,
+     * or -1 if any of the items is missing
+     */
+    public static long toRawId(long packedFileId, int[] remap)
+    {
+        int buyItem1 = getRemapped(TradeType.getRawId(packedFileId, 0), remap);
+        int buyItem2 = getRemapped(TradeType.getRawId(packedFileId, 1), remap);
+        int sellItem = getRemapped(TradeType.getRawId(packedFileId, 2), remap);
+
+        if (buyItem1 < 0 || buyItem2 < 0 || sellItem < 0)
+        {
+            return -1L;
+        }
+
+        return TradeType.packRawIds(buyItem1, buyItem2, sellItem);
+    }
+
+    private static int getRemapped(int fileId, int[] remap)
+    {
+        return fileId < remap.length ? remap[fileId] : -1;
+    }
+}
@@ -0,0 +1,116 @@
+package fi.dy.masa.itemscroller.villager;
+
+import javax.annotation.Nullable;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.village.TradeOffer;
+import net.minecraft.village.TradeOfferList;
+import fi.dy.masa.itemscroller.util.Constants;
+
+/**
+ * The stock state of a villager's offers when they were last seen,
+ * indexed by the real (server-side) trade index.
+ */
+public class OfferSnapshot
+{
+    private final int[] uses;
+    private final int[] maxUses;
+    private final float[] priceMultipliers;
+    private final long lastSeen;
+
+    private OfferSnapshot(int[] uses, int[] maxUses, float[] priceMultipliers, long lastSeen)
+    {
+        this.uses = uses;
+        this.maxUses = maxUses;
+        this.priceMultipliers = priceMultipliers;
+        this.lastSeen = lastSeen;
+    }
+
+    public static OfferSnapshot of(TradeOfferList offers)
+    {
+        final int size = offers.size();
+        int[] uses = new int[size];
+        int[] maxUses = new int[size];
+        float[] priceMultipliers = new float[size];
+
+        for (int i = 0; i < size; ++i)
+        {
+            TradeOffer offer = offers.get(i);
+            // Disabled offers are out of stock regardless of the use counts
+            uses[i] = offer.isDisabled() ? offer.getMaxUses() : offer.getUses();
+            maxUses[i] = offer.getMaxUses();
+            priceMultipliers[i] = offer.getPriceMultiplier();
+        }
+
+        return new OfferSnapshot(uses, maxUses, priceMultipliers, System.currentTimeMillis());
+    }
+
+    public long getLastSeen()
+    {
+        return this.lastSeen;
+    }
+
+    public int getRemainingUses(int realIndex)
+    {
+        if (realIndex >= 0 && realIndex < this.uses.length)
+        {
+            return Math.max(0, this.maxUses[realIndex] - this.uses[realIndex]);
+        }
+
+        return 0;
+    }
+
+    public boolean isOutOfStock(int realIndex)
+    {
+        return realIndex >= 0 && realIndex < this.uses.length && this.uses[realIndex] >= this.maxUses[realIndex];
+    }
+
+    public float getPriceMultiplier(int realIndex)
+    {
+        return realIndex >= 0 && realIndex < this.priceMultipliers.length ? this.priceMultipliers[realIndex] : 0f;
+    }
+
+    public NbtCompound toNBT()
+    {
+        NbtCompound tag = new NbtCompound();
+        int[] multipliers = new int[this.priceMultipliers.length];
+
+        for (int i = 0; i < multipliers.length; ++i)
+        {
+            multipliers[i] = Float.floatToIntBits(this.priceMultipliers[i]);
+        }
+
+        tag.putIntArray("Uses", this.uses);
+        tag.putIntArray("MaxUses", this.maxUses);
+        tag.putIntArray("PriceMultipliers", multipliers);
+        tag.putLong("LastSeen", this.lastSeen);
+
+        return tag;
+    }
+
+    @Nullable
+    public static OfferSnapshot fromNBT(NbtCompound tag)
+    {
+        if (tag.contains("Uses", Constants.NBT.TAG_INT_ARRAY) == false)
+        {
+            return null;
+        }
+
+        int[] uses = tag.getIntArray("Uses");
+        int[] maxUses = tag.getIntArray("MaxUses");
+        int[] multipliers = tag.getIntArray("PriceMultipliers");
+
+        if (maxUses.length != uses.length || multipliers.length != uses.length)
+        {
+            return null;
+        }
+
+        float[] priceMultipliers = new float[multipliers.length];
+
+        for (int i = 0; i < multipliers.length; ++i)
+        {
+            priceMultipliers[i] = Float.intBitsToFloat(multipliers[i]);
+        }
+
+        return new OfferSnapshot(uses, maxUses, priceMultipliers, tag.getLong("LastSeen"));
+    }
+}
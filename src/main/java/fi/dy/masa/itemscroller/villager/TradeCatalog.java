@@ -0,0 +1,346 @@
+package fi.dy.masa.itemscroller.villager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.ItemEnchantmentsComponent;
+import net.minecraft.enchantment.Enchantment;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.village.TradeOffer;
+import net.minecraft.village.TradeOfferList;
+import fi.dy.masa.itemscroller.util.Constants;
+
+/**
+ * An index of the last seen offers of all the villagers, by the sold item
+ * (and the enchantment, for enchanted books). It is updated one villager at a time
+ * whenever the offer snapshot of a villager is updated, and it's saved separately
+ * from the villager data shards, so that the whole catalog is searchable without
+ * loading every shard.
+ */
+public class TradeCatalog
+{
+    private static final TradeCatalog INSTANCE = new TradeCatalog();
+
+    private final Map<UUID, List<Entry>> entriesByVillager = new HashMap<>();
+    private final Map<String, CatalogItem> items = new HashMap<>();
+    private boolean dirty;
+
+    public static TradeCatalog getInstance()
+    {
+        return INSTANCE;
+    }
+
+    public void clear()
+    {
+        this.entriesByVillager.clear();
+        this.items.clear();
+        this.dirty = false;
+    }
+
+    public boolean isDirty()
+    {
+        return this.dirty;
+    }
+
+    /**
+     * Replaces the catalog entries of the given villager with its current offers
+     */
+    public void updateVillager(UUID uuid, @Nullable BlockPos pos, TradeOfferList offers)
+    {
+        this.removeVillager(uuid);
+
+        List<Entry> entries = new ArrayList<>();
+        final long time = System.currentTimeMillis();
+        final int size = offers.size();
+
+        for (int i = 0; i < size; ++i)
+        {
+            TradeOffer offer = offers.get(i);
+            ItemStack sell = offer.getSellItem();
+
+            if (sell.isEmpty())
+            {
+                continue;
+            }
+
+            ItemStack buy1 = offer.getDisplayedFirstBuyItem();
+            ItemStack buy2 = offer.getDisplayedSecondBuyItem();
+            Entry entry = new Entry(uuid, pos, i, sell.getItem(), sell.getCount(), getEnchantmentId(sell), getEnchantmentLevel(sell),
+                                    buy1.getItem(), buy1.getCount(), buy2.getItem(), buy2.getCount(),
+                                    TradePlanner.getRemainingUses(offer), time);
+            entries.add(entry);
+        }
+
+        if (entries.isEmpty() == false)
+        {
+            this.addEntries(uuid, entries);
+        }
+
+        this.dirty = true;
+    }
+
+    private void addEntries(UUID uuid, List<Entry> entries)
+    {
+        this.entriesByVillager.put(uuid, entries);
+
+        for (Entry entry : entries)
+        {
+            this.items.computeIfAbsent(entry.getKey(), key -> new CatalogItem(entry)).entries.add(entry);
+        }
+    }
+
+    private void removeVillager(UUID uuid)
+    {
+        List<Entry> oldEntries = this.entriesByVillager.remove(uuid);
+
+        if (oldEntries != null)
+        {
+            for (Entry entry : oldEntries)
+            {
+                String key = entry.getKey();
+                CatalogItem item = this.items.get(key);
+
+                if (item != null)
+                {
+                    item.entries.remove(entry);
+
+                    if (item.entries.isEmpty())
+                    {
+                        this.items.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all the offers whose sold item or enchantment name contains the given text,
+     * ordered by the item name and then the price (the first buy item count).
+     * This only compares the pre-computed names of the distinct sold items,
+     * so it stays fast even with hundreds of villagers.
+     */
+    public List<Entry> search(String query)
+    {
+        String str = query.trim().toLowerCase(Locale.ROOT);
+        List<CatalogItem> matches = new ArrayList<>();
+
+        for (CatalogItem item : this.items.values())
+        {
+            if (str.isEmpty() || item.searchName.contains(str))
+            {
+                matches.add(item);
+            }
+        }
+
+        matches.sort(Comparator.comparing(item -> item.searchName));
+
+        List<Entry> results = new ArrayList<>();
+
+        for (CatalogItem item : matches)
+        {
+            int start = results.size();
+            results.addAll(item.entries);
+            results.subList(start, results.size()).sort(Comparator.comparingInt((Entry e) -> e.buy1Count).thenComparingInt(e -> -e.remainingUses));
+        }
+
+        return results;
+    }
+
+    @Nullable
+    private static Enchantment getEnchantment(ItemStack stack)
+    {
+        ItemEnchantmentsComponent enchantments = stack.get(DataComponentTypes.STORED_ENCHANTMENTS);
+
+        if (enchantments != null)
+        {
+            for (RegistryEntry<Enchantment> entry : enchantments.getEnchantments())
+            {
+                return entry.value();
+            }
+        }
+
+        return null;
+    }
+
+    private static String getEnchantmentId(ItemStack stack)
+    {
+        Enchantment enchantment = getEnchantment(stack);
+        return enchantment != null ? String.valueOf(Registries.ENCHANTMENT.getId(enchantment)) : "";
+    }
+
+    private static int getEnchantmentLevel(ItemStack stack)
+    {
+        Enchantment enchantment = getEnchantment(stack);
+        ItemEnchantmentsComponent enchantments = stack.get(DataComponentTypes.STORED_ENCHANTMENTS);
+        return enchantment != null && enchantments != null ? enchantments.getLevel(enchantment) : 0;
+    }
+
+    public void readFromNBT(NbtCompound nbt)
+    {
+        this.clear();
+
+        NbtList villagerList = nbt.getList("Villagers", Constants.NBT.TAG_COMPOUND);
+
+        for (int i = 0; i < villagerList.size(); ++i)
+        {
+            NbtCompound villagerTag = villagerList.getCompound(i);
+            UUID uuid = new UUID(villagerTag.getLong("UUIDM"), villagerTag.getLong("UUIDL"));
+            BlockPos pos = villagerTag.contains("Pos", Constants.NBT.TAG_LONG) ? BlockPos.fromLong(villagerTag.getLong("Pos")) : null;
+            NbtList offerList = villagerTag.getList("Offers", Constants.NBT.TAG_COMPOUND);
+            List<Entry> entries = new ArrayList<>();
+
+            for (int j = 0; j < offerList.size(); ++j)
+            {
+                NbtCompound tag = offerList.getCompound(j);
+                Item sell = TradeType.getItemForName(tag.getString("Sell"));
+
+                if (sell != Items.AIR)
+                {
+                    entries.add(new Entry(uuid, pos, tag.getInt("Index"), sell, tag.getInt("SellCount"),
+                                          tag.getString("Ench"), tag.getInt("EnchLevel"),
+                                          TradeType.getItemForName(tag.getString("Buy1")), tag.getInt("Buy1Count"),
+                                          TradeType.getItemForName(tag.getString("Buy2")), tag.getInt("Buy2Count"),
+                                          tag.getInt("Stock"), tag.getLong("LastSeen")));
+                }
+            }
+
+            if (entries.isEmpty() == false)
+            {
+                this.addEntries(uuid, entries);
+            }
+        }
+    }
+
+    public NbtCompound writeToNBT()
+    {
+        NbtCompound nbt = new NbtCompound();
+        NbtList villagerList = new NbtList();
+
+        for (Map.Entry<UUID, List<Entry>> mapEntry : this.entriesByVillager.entrySet())
+        {
+            NbtCompound villagerTag = new NbtCompound();
+            NbtList offerList = new NbtList();
+            UUID uuid = mapEntry.getKey();
+            List<Entry> entries = mapEntry.getValue();
+
+            villagerTag.putLong("UUIDM", uuid.getMostSignificantBits());
+            villagerTag.putLong("UUIDL", uuid.getLeastSignificantBits());
+
+            if (entries.isEmpty() == false && entries.get(0).pos != null)
+            {
+                villagerTag.putLong("Pos", entries.get(0).pos.asLong());
+            }
+
+            for (Entry entry : entries)
+            {
+                NbtCompound tag = new NbtCompound();
+
+                tag.putInt("Index", entry.tradeIndex);
+                tag.putString("Sell", TradeType.getNameForItem(entry.sellItem));
+                tag.putInt("SellCount", entry.sellCount);
+                tag.putString("Ench", entry.enchantmentId);
+                tag.putInt("EnchLevel", entry.enchantmentLevel);
+                tag.putString("Buy1", TradeType.getNameForItem(entry.buyItem1));
+                tag.putInt("Buy1Count", entry.buy1Count);
+                tag.putString("Buy2", TradeType.getNameForItem(entry.buyItem2));
+                tag.putInt("Buy2Count", entry.buy2Count);
+                tag.putInt("Stock", entry.remainingUses);
+                tag.putLong("LastSeen", entry.lastSeen);
+
+                offerList.add(tag);
+            }
+
+            villagerTag.put("Offers", offerList);
+            villagerList.add(villagerTag);
+        }
+
+        nbt.put("Villagers", villagerList);
+        this.dirty = false;
+
+        return nbt;
+    }
+
+    private static class CatalogItem
+    {
+        private final String searchName;
+        private final List<Entry> entries = new ArrayList<>();
+
+        private CatalogItem(Entry entry)
+        {
+            this.searchName = entry.getDisplayName().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static class Entry
+    {
+        public final UUID villager;
+        @Nullable public final BlockPos pos;
+        public final int tradeIndex;
+        public final Item sellItem;
+        public final int sellCount;
+        public final String enchantmentId;
+        public final int enchantmentLevel;
+        public final Item buyItem1;
+        public final int buy1Count;
+        public final Item buyItem2;
+        public final int buy2Count;
+        public final int remainingUses;
+        public final long lastSeen;
+
+        private Entry(UUID villager, @Nullable BlockPos pos, int tradeIndex, Item sellItem, int sellCount,
+                      String enchantmentId, int enchantmentLevel, Item buyItem1, int buy1Count,
+                      Item buyItem2, int buy2Count, int remainingUses, long lastSeen)
+        {
+            this.villager = villager;
+            this.pos = pos;
+            this.tradeIndex = tradeIndex;
+            this.sellItem = sellItem;
+            this.sellCount = sellCount;
+            this.enchantmentId = enchantmentId;
+            this.enchantmentLevel = enchantmentLevel;
+            this.buyItem1 = buyItem1;
+            this.buy1Count = buy1Count;
+            this.buyItem2 = buyItem2;
+            this.buy2Count = buy2Count;
+            this.remainingUses = remainingUses;
+            this.lastSeen = lastSeen;
+        }
+
+        private String getKey()
+        {
+            String key = TradeType.getNameForItem(this.sellItem);
+            return this.enchantmentId.isEmpty() ? key : key + "#" + this.enchantmentId + ":" + this.enchantmentLevel;
+        }
+
+        public String getDisplayName()
+        {
+            String name = this.sellItem.getName().getString();
+
+            if (this.enchantmentId.isEmpty() == false)
+            {
+                Enchantment enchantment = Registries.ENCHANTMENT.get(Identifier.tryParse(this.enchantmentId));
+
+                if (enchantment != null)
+                {
+                    return name + " - " + enchantment.getName(this.enchantmentLevel).getString();
+                }
+            }
+
+            return name;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package fi.dy.masa.itemscroller.villager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import fi.dy.masa.itemscroller.ItemScroller;
+import fi.dy.masa.itemscroller.Reference;
+import fi.dy.masa.itemscroller.util.ClickPacketBuffer;
+import fi.dy.masa.malilib.util.FileUtils;
+
+/**
+ * Trade throughput counters of the villager trade engine, per villager and for the whole session.
+ * The wall time of a trade run lasts until all of its packets have actually been sent,
+ * so with 'rateLimitClickPackets' the time also includes the rate limited sending.
+ */
+public class TradeMetrics
+{
+    private static final TradeMetrics INSTANCE = new TradeMetrics();
+
+    private final Map<UUID, Stats> villagerStats = new HashMap<>();
+    private final Stats sessionStats = new Stats();
+    private final Set<Stats> pendingStats = new HashSet<>();
+    @Nullable private UUID runVillager;
+    private boolean runActive;
+    private long runStartTime;
+    private long runStartPackets;
+    private int runSelectPackets;
+    private int runFailedAttempts;
+    private long pendingStartTime;
+
+    public static TradeMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    public void reset()
+    {
+        this.villagerStats.clear();
+        this.sessionStats.clear();
+        this.pendingStats.clear();
+        this.runActive = false;
+    }
+
+    public void startRun(@Nullable UUID villager)
+    {
+        this.runVillager = villager;
+        this.runActive = true;
+        this.runStartTime = System.nanoTime();
+        this.runStartPackets = ClickPacketBuffer.getIssuedPacketCount();
+        this.runSelectPackets = 0;
+        this.runFailedAttempts = 0;
+    }
+
+    public void onSelectPacket()
+    {
+        if (this.runActive)
+        {
+            ++this.runSelectPackets;
+        }
+    }
+
+    public void onFailedAttempt()
+    {
+        if (this.runActive)
+        {
+            ++this.runFailedAttempts;
+        }
+    }
+
+    public void endRun(int trades)
+    {
+        if (this.runActive == false)
+        {
+            return;
+        }
+
+        this.runActive = false;
+
+        Stats villager = this.runVillager != null ? this.villagerStats.computeIfAbsent(this.runVillager, uuid -> new Stats()) : null;
+        long packets = ClickPacketBuffer.getIssuedPacketCount() - this.runStartPackets;
+
+        this.sessionStats.add(trades, packets, this.runSelectPackets, this.runFailedAttempts);
+
+        if (villager != null)
+        {
+            villager.add(trades, packets, this.runSelectPackets, this.runFailedAttempts);
+        }
+
+        // The packets are still waiting in the buffer, keep the clock running until they have been sent
+        if (ClickPacketBuffer.getBufferedActionsCount() > 0)
+        {
+            if (this.pendingStats.isEmpty())
+            {
+                this.pendingStartTime = this.runStartTime;
+            }
+
+            this.pendingStats.add(this.sessionStats);
+
+            if (villager != null)
+            {
+                this.pendingStats.add(villager);
+            }
+        }
+        else
+        {
+            long time = System.nanoTime() - this.runStartTime;
+            this.sessionStats.nanos += time;
+
+            if (villager != null)
+            {
+                villager.nanos += time;
+            }
+        }
+    }
+
+    /**
+     * Stops the clock of the buffered trade runs, once all of their packets have been sent
+     */
+    public void onClientTick()
+    {
+        if (this.pendingStats.isEmpty() == false && ClickPacketBuffer.getBufferedActionsCount() == 0)
+        {
+            long time = System.nanoTime() - this.pendingStartTime;
+
+            for (Stats stats : this.pendingStats)
+            {
+                stats.nanos += time;
+            }
+
+            this.pendingStats.clear();
+        }
+    }
+
+    public Stats getSessionStats()
+    {
+        return this.sessionStats;
+    }
+
+    @Nullable
+    public Stats getVillagerStats(@Nullable UUID villager)
+    {
+        return villager != null ? this.villagerStats.get(villager) : null;
+    }
+
+    /**
+     * Writes the session and the per villager stats to a new text file
+     * @return the file, or null on failure
+     */
+    @Nullable
+    public File writeToFile()
+    {
+        File dir = new File(FileUtils.getMinecraftDirectory(), Reference.MOD_ID);
+        String date = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date());
+        File file = new File(dir, "trade_metrics_" + date + ".txt");
+
+        if (dir.exists() == false && dir.mkdirs() == false)
+        {
+            ItemScroller.logger.warn("Failed to create the directory '{}'", dir.getPath());
+            return null;
+        }
+
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write("Session: " + this.sessionStats + "\n\n");
+
+            for (Map.Entry<UUID, Stats> entry : this.villagerStats.entrySet())
+            {
+                writer.write(entry.getKey() + ": " + entry.getValue() + "\n");
+            }
+
+            return file;
+        }
+        catch (IOException e)
+        {
+            ItemScroller.logger.warn("Failed to write the trade metrics to file '{}'", file.getPath(), e);
+        }
+
+        return null;
+    }
+
+    public static class Stats
+    {
+        public long trades;
+        public long packets;
+        public long selectPackets;
+        public long failedAttempts;
+        public long runs;
+        public long nanos;
+
+        private void add(int trades, long packets, int selectPackets, int failedAttempts)
+        {
+            this.trades += trades;
+            this.packets += packets;
+            this.selectPackets += selectPackets;
+            this.failedAttempts += failedAttempts;
+            ++this.runs;
+        }
+
+        private void clear()
+        {
+            this.trades = 0;
+            this.packets = 0;
+            this.selectPackets = 0;
+            this.failedAttempts = 0;
+            this.runs = 0;
+            this.nanos = 0;
+        }
+
+        public double getTradesPerSecond()
+        {
+            return this.nanos > 0 ? this.trades * 1.0E9 / this.nanos : 0.0;
+        }
+
+        public double getPacketsPerTrade()
+        {
+            return this.trades > 0 ? (double) this.packets / this.trades : 0.0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("trades: %d, runs: %d, packets: %d (%d selects), failed attempts: %d, time: %.2f s, %.2f trades/s, %.2f packets/trade",
+                                 this.trades, this.runs, this.packets, this.selectPackets, this.failedAttempts,
+                                 this.nanos / 1.0E9, this.getTradesPerSecond(), this.getPacketsPerTrade());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package fi.dy.masa.itemscroller.villager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.MerchantScreenHandler;
+import net.minecraft.village.TradeOffer;
+import net.minecraft.village.TradeOfferList;
+import fi.dy.masa.itemscroller.util.InventoryUtils;
+import fi.dy.masa.itemscroller.util.ItemCountIndex;
+import fi.dy.masa.itemscroller.util.ItemType;
+
+/**
+ * Computes how many times a trade can be done up front, so that the trade can be
+ * selected once and then executed with exactly the needed refill + extract cycles.
+ */
+public class TradePlanner
+{
+    /**
+     * @return the buy items available for trading: the player inventory plus the merchant's buy slots
+     */
+    public static ItemCountIndex getBuyItemBudget(MerchantScreenHandler handler, PlayerInventory inv)
+    {
+        ItemCountIndex budget = ItemCountIndex.fromPlayerInventory(inv);
+
+        for (int slotNum = 0; slotNum < 2; ++slotNum)
+        {
+            ItemStack stack = handler.getSlot(slotNum).getStack();
+            budget.add(stack, stack.getCount());
+        }
+
+        return budget;
+    }
+
+    /**
+     * @return the number of trades left before the offer gets disabled
+     */
+    public static int getRemainingUses(TradeOffer offer)
+    {
+        return offer.isDisabled() ? 0 : Math.max(0, offer.getMaxUses() - offer.getUses());
+    }
+
+    /**
+     * @return how many times the trade can be done with the given buy item budget, ignoring the uses and the inventory space
+     */
+    public static int getAffordableTradeCount(TradeOffer offer, ItemCountIndex budget)
+    {
+        ItemStack buy1 = offer.getDisplayedFirstBuyItem();
+        ItemStack buy2 = offer.getDisplayedSecondBuyItem();
+        int count = Integer.MAX_VALUE;
+
+        if (buy1.isEmpty() == false)
+        {
+            count = Math.min(count, budget.getCount(buy1) / buy1.getCount());
+        }
+
+        if (buy2.isEmpty() == false)
+        {
+            count = Math.min(count, budget.getCount(buy2) / buy2.getCount());
+        }
+
+        return count != Integer.MAX_VALUE ? count : 0;
+    }
+
+    /**
+     * @return how many times the trade can be done with the buy slots filled once,
+     * the selection auto-fill fills the buy slots up to a full stack
+     */
+    public static int getTradesPerFill(TradeOffer offer)
+    {
+        ItemStack buy1 = offer.getDisplayedFirstBuyItem();
+        ItemStack buy2 = offer.getDisplayedSecondBuyItem();
+        int count = Integer.MAX_VALUE;
+
+        if (buy1.isEmpty() == false)
+        {
+            count = Math.min(count, buy1.getMaxCount() / buy1.getCount());
+        }
+
+        if (buy2.isEmpty() == false)
+        {
+            count = Math.min(count, buy2.getMaxCount() / buy2.getCount());
+        }
+
+        return count != Integer.MAX_VALUE ? Math.max(count, 1) : 1;
+    }
+
+    /**
+     * Returns how many trades' worth of the sell item fits into the player inventory,
+     * including the slots that get freed up by the buy items used by <b>trades</b> trades
+     */
+    public static int getTradesFittingInInventory(TradeOffer offer, PlayerInventory inv, int trades)
+    {
+        ItemStack sell = offer.getSellItem();
+
+        if (sell.isEmpty())
+        {
+            return 0;
+        }
+
+        int space = 0;
+
+        for (ItemStack stack : inv.main)
+        {
+            if (stack.isEmpty())
+            {
+                space += sell.getMaxCount();
+            }
+            else if (InventoryUtils.areStacksEqual(stack, sell))
+            {
+                space += sell.getMaxCount() - stack.getCount();
+            }
+        }
+
+        // Whole stacks of buy items used up by the trades become free slots
+        space += getFreedSlots(offer.getDisplayedFirstBuyItem(), trades) * sell.getMaxCount();
+        space += getFreedSlots(offer.getDisplayedSecondBuyItem(), trades) * sell.getMaxCount();
+
+        return space / sell.getCount();
+    }
+
+    private static int getFreedSlots(ItemStack buyItem, int trades)
+    {
+        if (buyItem.isEmpty())
+        {
+            return 0;
+        }
+
+        return (int) (((long) trades * buyItem.getCount()) / buyItem.getMaxCount());
+    }
+
+    /**
+     * @return the number of times the trade can actually be done right now, limited by
+     * the buy items, the offer's remaining uses and the free inventory space
+     */
+    public static int getPossibleTradeCount(TradeOffer offer, ItemCountIndex budget, PlayerInventory inv)
+    {
+        int trades = Math.min(getRemainingUses(offer), getAffordableTradeCount(offer, budget));
+
+        if (trades > 0)
+        {
+            trades = Math.min(trades, getTradesFittingInInventory(offer, inv, trades));
+        }
+
+        return trades;
+    }
+
+    /**
+     * Splits the buy item budget and the free inventory space between the first <b>favoriteCount</b>
+     * trades of the visible trade list (the favorites), before any trading is done.
+     * The trades are allocated in the order of their user-assigned priority (highest first),
+     * and then in their list order, so a low priority favorite can't use up the emeralds
+     * that a higher priority favorite needs.
+     * @return the planned trades, in the order they should be executed
+     */
+    public static List<Allocation> planFavoriteTrades(MerchantScreenHandler handler, PlayerInventory inv, int favoriteCount)
+    {
+        TradeOfferList trades = handler.getRecipes();
+        VillagerDataStorage storage = VillagerDataStorage.getInstance();
+        List<Allocation> candidates = new ArrayList<>();
+        final int count = Math.min(favoriteCount, trades.size());
+
+        for (int index = 0; index < count; ++index)
+        {
+            candidates.add(new Allocation(index, storage.getTradePriority(trades.get(index))));
+        }
+
+        candidates.sort(Comparator.comparingInt((Allocation a) -> -a.priority).thenComparingInt(a -> a.visibleIndex));
+
+        ItemCountIndex budget = getBuyItemBudget(handler, inv);
+        int freeSlots = 0;
+
+        for (ItemStack stack : inv.main)
+        {
+            if (stack.isEmpty())
+            {
+                ++freeSlots;
+            }
+        }
+
+        List<Allocation> plan = new ArrayList<>();
+
+        for (Allocation allocation : candidates)
+        {
+            TradeOffer offer = trades.get(allocation.visibleIndex);
+            ItemStack sell = offer.getSellItem();
+            int tradeCount = Math.min(getRemainingUses(offer), getAffordableTradeCount(offer, budget));
+
+            if (tradeCount <= 0 || sell.isEmpty())
+            {
+                continue;
+            }
+
+            // The shared free slots, plus the slots freed by this trade's own buy items
+            int freed = getFreedSlots(offer.getDisplayedFirstBuyItem(), tradeCount) + getFreedSlots(offer.getDisplayedSecondBuyItem(), tradeCount);
+            tradeCount = Math.min(tradeCount, (freeSlots + freed) * sell.getMaxCount() / sell.getCount());
+
+            if (tradeCount <= 0)
+            {
+                continue;
+            }
+
+            ItemStack buy1 = offer.getDisplayedFirstBuyItem();
+            ItemStack buy2 = offer.getDisplayedSecondBuyItem();
+
+            if (buy1.isEmpty() == false)
+            {
+                budget.remove(new ItemType(buy1), tradeCount * buy1.getCount());
+            }
+
+            if (buy2.isEmpty() == false)
+            {
+                budget.remove(new ItemType(buy2), tradeCount * buy2.getCount());
+            }
+
+            int usedSlots = (tradeCount * sell.getCount() + sell.getMaxCount() - 1) / sell.getMaxCount();
+            freeSlots = Math.max(0, freeSlots + getFreedSlots(buy1, tradeCount) + getFreedSlots(buy2, tradeCount) - usedSlots);
+
+            allocation.trades = tradeCount;
+            plan.add(allocation);
+        }
+
+        return plan;
+    }
+
+    public static class Allocation
+    {
+        public final int visibleIndex;
+        public final int priority;
+        private int trades;
+
+        private Allocation(int visibleIndex, int priority)
+        {
+            this.visibleIndex = visibleIndex;
+            this.priority = priority;
+        }
+
+        public int getTrades()
+        {
+            return this.trades;
+        }
+    }
+}
@@ -12,27 +12,70 @@ import net.minecraft.village.TradeOffer;
 
 public class TradeType
 {
+    private static final int ID_BITS = 21;
+    private static final long ID_MASK = (1L << ID_BITS) - 1L;
+
     public final Item buyItem1;
     public final Item buyItem2;
     public final Item sellItem;
+    private final long packedId;
 
     public TradeType(Item buyItem1, Item buyItem2, Item sellItem)
     {
         this.buyItem1 = buyItem1;
         this.buyItem2 = buyItem2;
         this.sellItem = sellItem;
+        this.packedId = packIds(buyItem1, buyItem2, sellItem);
     }
 
     public boolean matchesTrade(TradeOffer trade)
     {
-        ItemStack stackBuyItem1 = trade.getOriginalFirstBuyItem();
-        ItemStack stackBuyItem2 = trade.getDisplayedSecondBuyItem();
-        ItemStack stackSellItem = trade.getSellItem();
-        Item buyItem1 = stackBuyItem1.getItem();
-        Item buyItem2 = stackBuyItem2.getItem();
-        Item sellItem = stackSellItem.getItem();
+        return this.packedId == getPackedIdOf(trade);
+    }
 
-        return this.buyItem1 == buyItem1 && this.buyItem2 == buyItem2 && this.sellItem == sellItem;
+    /**
+     * @return the three items' raw registry ids packed into one long.
+     * The raw ids are only valid for the current game session, so this must only be saved
+     * together with an {@link ItemIdRemapTable}.
+     */
+    public long getPackedId()
+    {
+        return this.packedId;
+    }
+
+    public static long getPackedIdOf(TradeOffer trade)
+    {
+        return packIds(trade.getOriginalFirstBuyItem().getItem(),
+                       trade.getDisplayedSecondBuyItem().getItem(),
+                       trade.getSellItem().getItem());
+    }
+
+    private static long packIds(Item buyItem1, Item buyItem2, Item sellItem)
+    {
+        return packRawIds(Registries.ITEM.getRawId(buyItem1), Registries.ITEM.getRawId(buyItem2), Registries.ITEM.getRawId(sellItem));
+    }
+
+    public static long packRawIds(int buyItem1, int buyItem2, int sellItem)
+    {
+        return ((buyItem1 & ID_MASK) << (2 * ID_BITS)) | ((buyItem2 & ID_MASK) << ID_BITS) | (sellItem & ID_MASK);
+    }
+
+    /**
+     * @param part 0 = the first buy item, 1 = the second buy item, 2 = the sell item
+     * @return the raw id of the given part of the packed trade type
+     */
+    public static int getRawId(long packedId, int part)
+    {
+        return (int) ((packedId >>> ((2 - part) * ID_BITS)) & ID_MASK);
+    }
+
+    public static TradeType fromPackedId(long packedId)
+    {
+        Item buyItem1 = Registries.ITEM.get(getRawId(packedId, 0));
+        Item buyItem2 = Registries.ITEM.get(getRawId(packedId, 1));
+        Item sellItem = Registries.ITEM.get(getRawId(packedId, 2));
+
+        return new TradeType(buyItem1, buyItem2, sellItem);
     }
 
     public NbtCompound toTag()
@@ -92,20 +135,13 @@ public class TradeType
         if (this == o) { return true; }
         if (o == null || getClass() != o.getClass()) { return false; }
 
-        TradeType tradeType = (TradeType) o;
-
-        if (!buyItem1.equals(tradeType.buyItem1)) { return false; }
-        if (!buyItem2.equals(tradeType.buyItem2)) { return false; }
-        return sellItem.equals(tradeType.sellItem);
+        return this.packedId == ((TradeType) o).packedId;
     }
 
     @Override
     public int hashCode()
     {
-        int result = buyItem1.hashCode();
-        result = 31 * result + buyItem2.hashCode();
-        result = 31 * result + sellItem.hashCode();
-        return result;
+        return Long.hashCode(this.packedId);
     }
 
     public static TradeType of(TradeOffer trade)
@@ -1,5 +1,6 @@
 package fi.dy.masa.itemscroller.villager;
 
+import java.util.BitSet;
 import java.util.UUID;
 import javax.annotation.Nullable;
 import net.minecraft.nbt.NbtCompound;
@@ -12,7 +13,9 @@ public class VillagerData
 {
     private final UUID uuid;
     private final IntArrayList favorites = new IntArrayList();
+    private final BitSet favoriteSet = new BitSet();
     private int tradeListPosition;
+    @Nullable private OfferSnapshot offerSnapshot;
 
     VillagerData(UUID uuid)
     {
@@ -36,21 +39,47 @@ public class VillagerData
 
     void toggleFavorite(int tradeIndex)
     {
-        if (this.favorites.contains(tradeIndex))
+        if (tradeIndex < 0)
+        {
+            return;
+        }
+
+        if (this.favoriteSet.get(tradeIndex))
         {
             this.favorites.rem(tradeIndex);
+            this.favoriteSet.clear(tradeIndex);
         }
         else
         {
             this.favorites.add(tradeIndex);
+            this.favoriteSet.set(tradeIndex);
         }
     }
 
+    @Nullable
+    public OfferSnapshot getOfferSnapshot()
+    {
+        return this.offerSnapshot;
+    }
+
+    void setOfferSnapshot(OfferSnapshot snapshot)
+    {
+        this.offerSnapshot = snapshot;
+    }
+
     IntArrayList getFavorites()
     {
         return this.favorites;
     }
 
+    /**
+     * @return the membership set of the favorites list, always in sync with {@link #getFavorites()}
+     */
+    BitSet getFavoriteSet()
+    {
+        return this.favoriteSet;
+    }
+
     public NbtCompound toNBT()
     {
         NbtCompound tag = new NbtCompound();
@@ -68,6 +97,11 @@ public class VillagerData
 
         tag.put("Favorites", tagList);
 
+        if (this.offerSnapshot != null)
+        {
+            tag.put("Offers", this.offerSnapshot.toNBT());
+        }
+
         return tag;
     }
 
@@ -82,10 +116,17 @@ public class VillagerData
 
             data.favorites.clear();
             data.tradeListPosition = tag.getInt("ListPosition");
+            data.offerSnapshot = OfferSnapshot.fromNBT(tag.getCompound("Offers"));
 
             for (int i = 0; i < count; ++i)
             {
-                data.favorites.add(tagList.getInt(i));
+                int index = tagList.getInt(i);
+
+                if (index >= 0 && data.favoriteSet.get(index) == false)
+                {
+                    data.favorites.add(index);
+                    data.favoriteSet.set(index);
+                }
             }
 
             return data;
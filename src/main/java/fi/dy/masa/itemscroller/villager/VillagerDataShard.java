@@ -0,0 +1,67 @@
+package fi.dy.masa.itemscroller.villager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+import fi.dy.masa.itemscroller.util.Constants;
+
+/**
+ * One on-disk shard of the villager data, holding the villagers
+ * whose UUID starts with the same byte.
+ */
+class VillagerDataShard
+{
+    final int id;
+    final Map<UUID, VillagerData> data = new HashMap<>();
+    boolean dirty;
+    long lastAccess;
+
+    VillagerDataShard(int id)
+    {
+        this.id = id;
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    static int getShardId(UUID uuid)
+    {
+        return (int) (uuid.getMostSignificantBits() >>> 56);
+    }
+
+    static String getFileName(int id)
+    {
+        return String.format("shard_%02x.nbt", id);
+    }
+
+    void readFromNBT(NbtCompound nbt)
+    {
+        NbtList tagList = nbt.getList("VillagerData", Constants.NBT.TAG_COMPOUND);
+        final int count = tagList.size();
+
+        for (int i = 0; i < count; i++)
+        {
+            VillagerData data = VillagerData.fromNBT(tagList.getCompound(i));
+
+            if (data != null)
+            {
+                this.data.put(data.getUUID(), data);
+            }
+        }
+    }
+
+    NbtCompound writeToNBT()
+    {
+        NbtCompound nbt = new NbtCompound();
+        NbtList tagList = new NbtList();
+
+        for (VillagerData data : this.data.values())
+        {
+            tagList.add(data.toNBT());
+        }
+
+        nbt.put("VillagerData", tagList);
+
+        return nbt;
+    }
+}
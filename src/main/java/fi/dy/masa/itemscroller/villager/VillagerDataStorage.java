@@ -3,20 +3,23 @@ package fi.dy.masa.itemscroller.villager;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.lang.ref.WeakReference;
 import java.util.UUID;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtSizeTracker;
 import net.minecraft.screen.MerchantScreenHandler;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.village.TradeOffer;
 import net.minecraft.village.TradeOfferList;
 
@@ -30,11 +33,22 @@ import fi.dy.masa.malilib.util.StringUtils;
 public class VillagerDataStorage
 {
     private static final VillagerDataStorage INSTANCE = new VillagerDataStorage();
+    private static final String INDEX_FILE_NAME = "index.nbt";
+    private static final String CATALOG_FILE_NAME = "catalog.nbt";
 
-    private final Map<UUID, VillagerData> data = new HashMap<>();
-    private final List<TradeType> globalFavorites = new ArrayList<>();
+    private final Int2ObjectOpenHashMap<VillagerDataShard> loadedShards = new Int2ObjectOpenHashMap<>();
+    private final IntOpenHashSet shardsOnDisk = new IntOpenHashSet();
+    private final LongLinkedOpenHashSet globalFavorites = new LongLinkedOpenHashSet();
+    private final Long2IntOpenHashMap tradePriorities = new Long2IntOpenHashMap();
     private UUID lastInteractedUUID;
-    private boolean dirty;
+    @Nullable private BlockPos lastInteractedPos;
+    private boolean indexDirty;
+    private long lastUnloadCheck;
+    @Nullable private File dataDir;
+    private int globalFavoritesVersion;
+    private WeakReference<TradeOfferList> cachedGlobalFavoritesList = new WeakReference<>(null);
+    private int cachedGlobalFavoritesVersion = -1;
+    @Nullable private FavoriteData cachedGlobalFavorites;
 
     public static VillagerDataStorage getInstance()
     {
@@ -46,6 +60,17 @@ public class VillagerDataStorage
         this.lastInteractedUUID = uuid;
     }
 
+    @Nullable
+    public UUID getLastInteractedUUID()
+    {
+        return this.lastInteractedUUID;
+    }
+
+    public void setLastInteractedPos(@Nullable BlockPos pos)
+    {
+        this.lastInteractedPos = pos;
+    }
+
     @Nullable
     public VillagerData getDataForLastInteractionTarget()
     {
@@ -54,19 +79,91 @@ public class VillagerDataStorage
 
     public VillagerData getDataFor(@Nullable UUID uuid, boolean create)
     {
-        VillagerData data = uuid != null ? this.data.get(uuid) : null;
+        if (uuid == null)
+        {
+            return null;
+        }
 
-        if (data == null && uuid != null && create)
+        VillagerDataShard shard = this.getShard(VillagerDataShard.getShardId(uuid), create);
+        VillagerData data = shard != null ? shard.data.get(uuid) : null;
+
+        if (data == null && shard != null && create)
         {
             this.setLastInteractedUUID(uuid);
             data = new VillagerData(uuid);
-            this.data.put(uuid, data);
-            this.dirty = true;
+            shard.data.put(uuid, data);
+            shard.dirty = true;
         }
 
         return data;
     }
 
+    /**
+     * Returns the given shard, loading it from disk on the first access
+     */
+    @Nullable
+    private VillagerDataShard getShard(int shardId, boolean create)
+    {
+        VillagerDataShard shard = this.loadedShards.get(shardId);
+
+        if (shard == null && (create || this.shardsOnDisk.contains(shardId)))
+        {
+            shard = new VillagerDataShard(shardId);
+
+            if (this.shardsOnDisk.contains(shardId))
+            {
+                NbtCompound nbt = this.readFile(new File(this.getDataDir(), VillagerDataShard.getFileName(shardId)));
+
+                if (nbt != null)
+                {
+                    shard.readFromNBT(nbt);
+                }
+            }
+
+            this.loadedShards.put(shardId, shard);
+        }
+
+        if (shard != null)
+        {
+            shard.lastAccess = System.currentTimeMillis();
+        }
+
+        return shard;
+    }
+
+    private void markDirty(VillagerData data)
+    {
+        VillagerDataShard shard = this.loadedShards.get(VillagerDataShard.getShardId(data.getUUID()));
+
+        if (shard != null)
+        {
+            shard.dirty = true;
+        }
+    }
+
+    /**
+     * Saves and unloads the shards that haven't been accessed within the 'villagerDataUnloadTime'.
+     * This is called from the client tick, so that shards that are never accessed again
+     * also get unloaded. The actual check is only done every 10 seconds.
+     */
+    public void unloadIdleShards()
+    {
+        final long unloadTime = Configs.Generic.VILLAGER_DATA_UNLOAD_TIME.getIntegerValue() * 1000L;
+        final long currentTime = System.currentTimeMillis();
+
+        if (unloadTime <= 0 || currentTime - this.lastUnloadCheck < 10000L)
+        {
+            return;
+        }
+
+        this.lastUnloadCheck = currentTime;
+        int currentShard = this.lastInteractedUUID != null ? VillagerDataShard.getShardId(this.lastInteractedUUID) : -1;
+
+        this.loadedShards.values().removeIf(shard -> shard.id != currentShard &&
+                                                     currentTime - shard.lastAccess > unloadTime &&
+                                                     this.writeShard(shard));
+    }
+
     public void setTradeListPosition(int position)
     {
         VillagerData data = this.getDataFor(this.lastInteractedUUID, true);
@@ -74,7 +171,7 @@ public class VillagerDataStorage
         if (data != null)
         {
             data.setTradeListPosition(position);
-            this.dirty = true;
+            this.markDirty(data);
         }
     }
 
@@ -85,24 +182,75 @@ public class VillagerDataStorage
         if (data != null)
         {
             data.toggleFavorite(tradeIndex);
-            this.dirty = true;
+            this.markDirty(data);
+        }
+    }
+
+    /**
+     * Records the current stock state of the last interacted villager's offers,
+     * and updates the villager's entries in the trade catalog
+     */
+    public void updateOfferSnapshot(TradeOfferList originalTrades)
+    {
+        VillagerData data = this.getDataFor(this.lastInteractedUUID, true);
+
+        if (data != null && originalTrades != null)
+        {
+            data.setOfferSnapshot(OfferSnapshot.of(originalTrades));
+            this.markDirty(data);
+            TradeCatalog.getInstance().updateVillager(data.getUUID(), this.lastInteractedPos, originalTrades);
         }
     }
 
+    /**
+     * @return true if the trade at the given visible index was out of stock
+     * in the last offer snapshot of the current villager
+     */
+    public boolean isOutOfStock(MerchantScreenHandler handler, int visibleIndex)
+    {
+        VillagerData data = this.getDataFor(this.lastInteractedUUID, false);
+        OfferSnapshot snapshot = data != null ? data.getOfferSnapshot() : null;
+
+        return snapshot != null && snapshot.isOutOfStock(VillagerUtils.getRealTradeIndexFor(visibleIndex, handler));
+    }
+
     public void toggleGlobalFavorite(TradeOffer trade)
     {
-        TradeType type = TradeType.of(trade);
+        long type = TradeType.getPackedIdOf(trade);
+
+        if (this.globalFavorites.remove(type) == false)
+        {
+            this.globalFavorites.add(type);
+        }
+
+        ++this.globalFavoritesVersion;
+        this.indexDirty = true;
+    }
+
+    /**
+     * @return the user-assigned trading priority of the given trade type, 0 by default.
+     * Higher priority favorites get their share of the trading budget first.
+     */
+    public int getTradePriority(TradeOffer trade)
+    {
+        return this.tradePriorities.get(TradeType.getPackedIdOf(trade));
+    }
+
+    public void adjustTradePriority(TradeOffer trade, int amount)
+    {
+        long type = TradeType.getPackedIdOf(trade);
+        int priority = this.tradePriorities.get(type) + amount;
 
-        if (this.globalFavorites.contains(type))
+        if (priority != 0)
         {
-            this.globalFavorites.remove(type);
+            this.tradePriorities.put(type, priority);
         }
         else
         {
-            this.globalFavorites.add(type);
+            this.tradePriorities.remove(type);
         }
 
-        this.dirty = true;
+        this.indexDirty = true;
     }
 
     public FavoriteData getFavoritesForCurrentVillager(MerchantScreenHandler handler)
@@ -117,39 +265,118 @@ public class VillagerDataStorage
 
         if (favorites != null && favorites.isEmpty() == false)
         {
-            return new FavoriteData(favorites, false);
+            return new FavoriteData(favorites, data.getFavoriteSet(), false);
         }
 
         if (Configs.Generic.VILLAGER_TRADE_USE_GLOBAL_FAVORITES.getBooleanValue() && this.lastInteractedUUID != null)
         {
-            return new FavoriteData(VillagerUtils.getGlobalFavoritesFor(originalTrades, this.globalFavorites), true);
+            return this.getGlobalFavoritesFor(originalTrades);
         }
 
         return new FavoriteData(IntArrayList.of(), favorites == null);
     }
 
+    /**
+     * Returns the global favorites resolved against the given trade list.
+     * The result is cached for the last trade list, until the global favorites change.
+     */
+    private FavoriteData getGlobalFavoritesFor(TradeOfferList originalTrades)
+    {
+        if (this.cachedGlobalFavorites == null ||
+            this.cachedGlobalFavoritesList.get() != originalTrades ||
+            this.cachedGlobalFavoritesVersion != this.globalFavoritesVersion)
+        {
+            this.cachedGlobalFavorites = new FavoriteData(VillagerUtils.getGlobalFavoritesFor(originalTrades, this.globalFavorites), true);
+            this.cachedGlobalFavoritesList = new WeakReference<>(originalTrades);
+            this.cachedGlobalFavoritesVersion = this.globalFavoritesVersion;
+        }
+
+        return this.cachedGlobalFavorites;
+    }
+
     private void readFromNBT(NbtCompound nbt)
     {
-        if (nbt == null || nbt.contains("VillagerData", Constants.NBT.TAG_LIST) == false)
+        if (nbt.contains("ItemIds", Constants.NBT.TAG_LIST))
         {
-            return;
+            int[] remap = ItemIdRemapTable.readRemap(nbt.getList("ItemIds", Constants.NBT.TAG_STRING));
+
+            for (long fileId : nbt.getLongArray("GlobalFavoriteTypes"))
+            {
+                long type = ItemIdRemapTable.toRawId(fileId, remap);
+
+                if (type != -1L)
+                {
+                    this.globalFavorites.add(type);
+                }
+            }
+
+            long[] priorityTypes = nbt.getLongArray("PriorityTypes");
+            int[] priorities = nbt.getIntArray("PriorityValues");
+            final int count = Math.min(priorityTypes.length, priorities.length);
+
+            for (int i = 0; i < count; i++)
+            {
+                long type = ItemIdRemapTable.toRawId(priorityTypes[i], remap);
+
+                if (type != -1L && priorities[i] != 0)
+                {
+                    this.tradePriorities.put(type, priorities[i]);
+                }
+            }
+        }
+        else
+        {
+            this.readLegacyTradeTypes(nbt);
         }
 
-        NbtList tagList = nbt.getList("VillagerData", Constants.NBT.TAG_COMPOUND);
+        for (int shardId : nbt.getIntArray("Shards"))
+        {
+            this.shardsOnDisk.add(shardId);
+        }
+
+        // The old single file format, move all the villagers to the shards
+        if (nbt.contains("VillagerData", Constants.NBT.TAG_LIST))
+        {
+            NbtList tagList = nbt.getList("VillagerData", Constants.NBT.TAG_COMPOUND);
+            final int count = tagList.size();
+
+            for (int i = 0; i < count; i++)
+            {
+                VillagerData data = VillagerData.fromNBT(tagList.getCompound(i));
+
+                if (data != null)
+                {
+                    VillagerDataShard shard = this.getShard(VillagerDataShard.getShardId(data.getUUID()), true);
+                    shard.data.put(data.getUUID(), data);
+                    shard.dirty = true;
+                }
+            }
+
+            this.indexDirty = true;
+        }
+    }
+
+    /**
+     * Reads the global favorites and the trade priorities from the old format,
+     * with the item names of each trade type in a separate compound tag
+     */
+    private void readLegacyTradeTypes(NbtCompound nbt)
+    {
+        NbtList tagList = nbt.getList("GlobalFavorites", Constants.NBT.TAG_COMPOUND);
         int count = tagList.size();
 
         for (int i = 0; i < count; i++)
         {
             NbtCompound tag = tagList.getCompound(i);
-            VillagerData data = VillagerData.fromNBT(tag);
+            TradeType type = TradeType.fromTag(tag);
 
-            if (data != null)
+            if (type != null)
             {
-                this.data.put(data.getUUID(), data);
+                this.globalFavorites.add(type.getPackedId());
             }
         }
 
-        tagList = nbt.getList("GlobalFavorites", Constants.NBT.TAG_COMPOUND);
+        tagList = nbt.getList("TradePriorities", Constants.NBT.TAG_COMPOUND);
         count = tagList.size();
 
         for (int i = 0; i < count; i++)
@@ -157,37 +384,46 @@ public class VillagerDataStorage
             NbtCompound tag = tagList.getCompound(i);
             TradeType type = TradeType.fromTag(tag);
 
-            if (type != null)
+            if (type != null && tag.getInt("Priority") != 0)
             {
-                this.globalFavorites.add(type);
+                this.tradePriorities.put(type.getPackedId(), tag.getInt("Priority"));
             }
         }
+
+        this.indexDirty = true;
     }
 
     private NbtCompound writeToNBT(@Nonnull NbtCompound nbt)
     {
-        NbtList favoriteListData = new NbtList();
-        NbtList globalFavoriteData = new NbtList();
+        ItemIdRemapTable table = new ItemIdRemapTable();
+        long[] globalFavoriteTypes = new long[this.globalFavorites.size()];
+        long[] priorityTypes = new long[this.tradePriorities.size()];
+        int[] priorities = new int[priorityTypes.length];
+        int index = 0;
 
-        for (VillagerData data : this.data.values())
+        for (long type : this.globalFavorites)
         {
-            favoriteListData.add(data.toNBT());
+            globalFavoriteTypes[index++] = table.toFileId(type);
         }
 
-        for (TradeType type : this.globalFavorites)
+        index = 0;
+
+        for (Long2IntMap.Entry entry : this.tradePriorities.long2IntEntrySet())
         {
-            globalFavoriteData.add(type.toTag());
+            priorityTypes[index] = table.toFileId(entry.getLongKey());
+            priorities[index++] = entry.getIntValue();
         }
 
-        nbt.put("VillagerData", favoriteListData);
-        nbt.put("GlobalFavorites", globalFavoriteData);
-
-        this.dirty = false;
+        nbt.put("ItemIds", table.toNBT());
+        nbt.putLongArray("GlobalFavoriteTypes", globalFavoriteTypes);
+        nbt.putLongArray("PriorityTypes", priorityTypes);
+        nbt.putIntArray("PriorityValues", priorities);
+        nbt.putIntArray("Shards", this.shardsOnDisk.toIntArray());
 
         return nbt;
     }
 
-    private String getFileName()
+    private String getLegacyFileName()
     {
         String worldName = StringUtils.getWorldOrServerName();
 
@@ -199,80 +435,184 @@ public class VillagerDataStorage
         return "villager_data.nbt";
     }
 
+    private String getDataDirName()
+    {
+        String worldName = StringUtils.getWorldOrServerName();
+
+        if (worldName != null)
+        {
+            return "villager_data_" + worldName;
+        }
+
+        return "villager_data";
+    }
+
     private File getSaveDir()
     {
         return new File(FileUtils.getMinecraftDirectory(), Reference.MOD_ID);
     }
 
+    private File getDataDir()
+    {
+        if (this.dataDir == null)
+        {
+            this.dataDir = new File(this.getSaveDir(), this.getDataDirName());
+        }
+
+        return this.dataDir;
+    }
+
+    /**
+     * Reads the index file with the global data and the list of the existing shards.
+     * The villager data itself is read lazily per shard, on the first access to a villager in that shard.
+     * If there is no index file yet, then the old single file format is read and converted.
+     */
     public void readFromDisk()
     {
-        this.data.clear();
+        this.loadedShards.clear();
+        this.shardsOnDisk.clear();
         this.globalFavorites.clear();
+        ++this.globalFavoritesVersion;
+        this.tradePriorities.clear();
+        this.indexDirty = false;
+        this.dataDir = new File(this.getSaveDir(), this.getDataDirName());
 
-        try
+        File indexFile = new File(this.dataDir, INDEX_FILE_NAME);
+        File legacyFile = new File(this.getSaveDir(), this.getLegacyFileName());
+        NbtCompound nbt = this.readFile(indexFile.exists() ? indexFile : legacyFile);
+
+        if (nbt != null)
         {
-            File saveDir = this.getSaveDir();
-            File file = new File(saveDir, this.getFileName());
+            this.readFromNBT(nbt);
+        }
+
+        TradeCatalog.getInstance().clear();
+        nbt = this.readFile(new File(this.dataDir, CATALOG_FILE_NAME));
 
+        if (nbt != null)
+        {
+            TradeCatalog.getInstance().readFromNBT(nbt);
+        }
+    }
+
+    /**
+     * Writes all the dirty shards, and the index file if it has changed
+     */
+    public void writeToDisk()
+    {
+        for (VillagerDataShard shard : this.loadedShards.values())
+        {
+            this.writeShard(shard);
+        }
+
+        if (this.indexDirty)
+        {
+            this.writeIndex();
+        }
+
+        if (TradeCatalog.getInstance().isDirty())
+        {
+            this.writeFile(new File(this.getDataDir(), CATALOG_FILE_NAME), TradeCatalog.getInstance().writeToNBT());
+        }
+    }
+
+    private boolean writeShard(VillagerDataShard shard)
+    {
+        if (shard.dirty == false)
+        {
+            return true;
+        }
+
+        if (this.writeFile(new File(this.getDataDir(), VillagerDataShard.getFileName(shard.id)), shard.writeToNBT()))
+        {
+            shard.dirty = false;
+
+            // Keep the index in sync right away, so that the new shard file is never orphaned
+            if (this.shardsOnDisk.add(shard.id))
+            {
+                this.writeIndex();
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private void writeIndex()
+    {
+        if (this.writeFile(new File(this.getDataDir(), INDEX_FILE_NAME), this.writeToNBT(new NbtCompound())))
+        {
+            this.indexDirty = false;
+        }
+    }
+
+    @Nullable
+    private NbtCompound readFile(File file)
+    {
+        try
+        {
             if (file.exists())
             {
                 if (file.isFile() && file.canRead())
                 {
                     FileInputStream is = new FileInputStream(file);
-                    this.readFromNBT(NbtIo.readCompressed(is, NbtSizeTracker.ofUnlimitedBytes()));
+                    NbtCompound nbt = NbtIo.readCompressed(is, NbtSizeTracker.ofUnlimitedBytes());
                     is.close();
+                    return nbt;
                 }
                 else
                 {
-                    ItemScroller.logger.warn("VillagerDataStorage#readFromDisk(): Error reading villager data from file '{}'", file.getPath());
+                    ItemScroller.logger.warn("VillagerDataStorage#readFile(): Error reading villager data from file '{}'", file.getPath());
                 }
             }
         }
         catch (Exception e)
         {
-            ItemScroller.logger.warn("Failed to read villager data from file", e);
+            ItemScroller.logger.warn("Failed to read villager data from file '{}'", file.getPath(), e);
         }
+
+        return null;
     }
 
-    public void writeToDisk()
+    private boolean writeFile(File fileReal, NbtCompound nbt)
     {
-        if (this.dirty)
+        try
         {
-            try
-            {
-                File saveDir = this.getSaveDir();
-
-                if (saveDir.exists() == false && saveDir.mkdirs() == false)
-                {
-                    ItemScroller.logger.warn("Failed to create the data storage directory '{}'", saveDir.getPath());
-                    return;
-                }
+            File saveDir = fileReal.getParentFile();
 
-                File fileTmp  = new File(saveDir, this.getFileName() + ".tmp");
-                File fileReal = new File(saveDir, this.getFileName());
-                FileOutputStream os = new FileOutputStream(fileTmp);
-                NbtIo.writeCompressed(this.writeToNBT(new NbtCompound()), os);
-                os.close();
+            if (saveDir.exists() == false && saveDir.mkdirs() == false)
+            {
+                ItemScroller.logger.warn("Failed to create the data storage directory '{}'", saveDir.getPath());
+                return false;
+            }
 
-                if (fileReal.exists())
-                {
-                    if (fileReal.delete() == false)
-                    {
-                        ItemScroller.logger.warn("VillagerDataStorage#writeToDisk(): failed to delete file {} ", fileReal.getName());
-                    }
-                }
+            File fileTmp = new File(saveDir, fileReal.getName() + ".tmp");
+            FileOutputStream os = new FileOutputStream(fileTmp);
+            NbtIo.writeCompressed(nbt, os);
+            os.close();
 
-                if (fileTmp.renameTo(fileReal) == false)
+            if (fileReal.exists())
+            {
+                if (fileReal.delete() == false)
                 {
-                    ItemScroller.logger.warn("VillagerDataStorage#writeToDisk(): failed to delete file {} ", fileTmp.getName());
+                    ItemScroller.logger.warn("VillagerDataStorage#writeFile(): failed to delete file {} ", fileReal.getName());
                 }
-                this.dirty = false;
-
             }
-            catch (Exception e)
+
+            if (fileTmp.renameTo(fileReal) == false)
             {
-                ItemScroller.logger.warn("Failed to write villager data to file!", e);
+                ItemScroller.logger.warn("VillagerDataStorage#writeFile(): failed to rename file {} ", fileTmp.getName());
+                return false;
             }
+
+            return true;
         }
+        catch (Exception e)
+        {
+            ItemScroller.logger.warn("Failed to write villager data to file '{}'", fileReal.getPath(), e);
+        }
+
+        return false;
     }
 }
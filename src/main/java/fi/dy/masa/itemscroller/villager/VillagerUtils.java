@@ -1,10 +1,8 @@
 package fi.dy.masa.itemscroller.villager;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import net.minecraft.client.MinecraftClient;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.screen.ingame.MerchantScreen;
 import net.minecraft.network.packet.c2s.play.SelectMerchantTradeC2SPacket;
@@ -12,6 +10,7 @@ import net.minecraft.screen.MerchantScreenHandler;
 import net.minecraft.village.TradeOffer;
 import net.minecraft.village.TradeOfferList;
 import fi.dy.masa.malilib.util.GuiUtils;
+import fi.dy.masa.itemscroller.util.ClickPacketBuffer;
 
 public class VillagerUtils
 {
@@ -33,8 +32,9 @@ public class VillagerUtils
                 // Use the "visible index", since this will access the custom list
                 handler.switchTo(visibleIndex);
 
-                // Use the real (server-side) index
-                MinecraftClient.getInstance().getNetworkHandler().sendPacket(new SelectMerchantTradeC2SPacket(realIndex));
+                // Use the real (server-side) index. Keep the selection in order with any buffered clicks.
+                ClickPacketBuffer.sendOrBufferPacket(new SelectMerchantTradeC2SPacket(realIndex));
+                TradeMetrics.getInstance().onSelectPacket();
 
                 return true;
             }
@@ -47,30 +47,13 @@ public class VillagerUtils
     {
         if (handler instanceof IMerchantScreenHandler)
         {
-            TradeOfferList originalList = ((IMerchantScreenHandler) handler).getOriginalList();
-            TradeOfferList customList = handler.getRecipes();
-
-            if (originalList != null && customList != null &&
-                visibleIndex >= 0 && visibleIndex < customList.size())
-            {
-                TradeOffer trade = customList.get(visibleIndex);
-
-                if (trade != null)
-                {
-                    int realIndex = originalList.indexOf(trade);
-
-                    if (realIndex >= 0 && realIndex < originalList.size())
-                    {
-                        return realIndex;
-                    }
-                }
-            }
+            return ((IMerchantScreenHandler) handler).getRealTradeIndex(visibleIndex);
         }
 
         return -1;
     }
 
-    public static TradeOfferList buildCustomTradeList(TradeOfferList originalList)
+    public static CustomTradeList buildCustomTradeList(TradeOfferList originalList)
     {
         FavoriteData data = VillagerDataStorage.getInstance().getFavoritesForCurrentVillager(originalList);
         IntArrayList favorites = data.favorites;
@@ -82,59 +65,74 @@ public class VillagerUtils
         {
             TradeOfferList list = new TradeOfferList();
             int originalListSize = originalList.size();
+            IntArrayList realIndices = new IntArrayList(originalListSize);
 
             // First pick all the favorited recipes, in the order they are in the favorites list
             for (int index : favorites)
             {
                 if (index >= 0 && index < originalListSize)
                 {
+                    realIndices.add(index);
                     list.add(originalList.get(index));
                 }
             }
 
+            final int favoriteCount = list.size();
+
             // Then add the rest of the recipes in their original order
             for (int i = 0; i < originalListSize; ++i)
             {
-                if (favorites.contains(i) == false)
+                if (data.isFavorite(i) == false)
                 {
+                    realIndices.add(i);
                     list.add(originalList.get(i));
                 }
             }
 
-            return list;
+            return new CustomTradeList(list, realIndices, favoriteCount, true);
         }
 
-        return originalList;
+        final int size = originalList.size();
+        IntArrayList realIndices = new IntArrayList(size);
+
+        for (int i = 0; i < size; ++i)
+        {
+            realIndices.add(i);
+        }
+
+        return new CustomTradeList(originalList, realIndices, 0, false);
     }
 
-    public static IntArrayList getGlobalFavoritesFor(TradeOfferList originalTrades, Collection<TradeType> globalFavorites)
+    public static IntArrayList getGlobalFavoritesFor(TradeOfferList originalTrades, LongCollection globalFavorites)
     {
         IntArrayList favorites = new IntArrayList();
-        Map<TradeType, Integer> trades = new HashMap<>();
+        Long2IntOpenHashMap trades = new Long2IntOpenHashMap();
         final int size = originalTrades.size();
 
-        // Build a map from the trade types to the indices in the current villager's trade list
+        trades.defaultReturnValue(-1);
+
+        // Build a map from the packed trade types to the indices in the current villager's trade list
         for (int i = 0; i < size; ++i)
         {
             TradeOffer trade = originalTrades.get(i);
-            trades.put(TradeType.of(trade), i);
+            trades.put(TradeType.getPackedIdOf(trade), i);
         }
 
         // Pick the trade list indices that are in the global favorites, in the order that they were global favorited
-        for (TradeType type : globalFavorites)
+        for (long type : globalFavorites)
         {
-            Integer index = trades.get(type);
+            int index = trades.get(type);
 
-            if (index != null)
+            if (index != -1)
             {
-                favorites.add(index.intValue());
+                favorites.add(index);
             }
         }
 
         /* This is a version that is not sorted based on the order of the global favorites
         for (int i = 0; i < size; ++i)
         {
-            TradeType type = TradeType.of(originalTrades.get(i));
+            long type = TradeType.getPackedIdOf(originalTrades.get(i));
 
             if (globalFavorites.contains(type))
             {